@@ -3,8 +3,14 @@ package com.mrcrayfish.framework.api;
 import com.mrcrayfish.framework.api.data.login.ILoginData;
 import com.mrcrayfish.framework.api.network.FrameworkNetworkBuilder;
 import com.mrcrayfish.framework.api.registry.RegistryEntry;
+import com.mrcrayfish.framework.api.sync.SyncedBlockEntityKey;
 import com.mrcrayfish.framework.api.sync.SyncedDataKey;
+import com.mrcrayfish.framework.api.sync.SyncedLevelDataKey;
+import com.mrcrayfish.framework.api.sync.SyncedMenuDataKey;
+import com.mrcrayfish.framework.blockentity.sync.SyncedBlockEntityData;
 import com.mrcrayfish.framework.entity.sync.SyncedEntityData;
+import com.mrcrayfish.framework.level.sync.SyncedLevelData;
+import com.mrcrayfish.framework.menu.sync.SyncedMenuData;
 import com.mrcrayfish.framework.network.LoginDataManager;
 import com.mrcrayfish.framework.platform.Services;
 import net.minecraft.network.FriendlyByteBuf;
@@ -12,6 +18,7 @@ import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.MenuProvider;
 import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.block.entity.BlockEntity;
 import org.apache.commons.lang3.function.TriFunction;
 
 import java.util.OptionalInt;
@@ -50,6 +57,59 @@ public class FrameworkAPI
         SyncedEntityData.instance().registerDataKey(key);
     }
 
+    /**
+     * Registers a synced block entity key into Framework's system. This should be called during
+     * common setup. An exception will be thrown if this is called after the initialization phase of
+     * the game. See {@link SyncedBlockEntityKey} for more information.
+     *
+     * @param key the synced block entity key instance
+     */
+    public static <B extends BlockEntity, T> void registerSyncedBlockEntityKey(SyncedBlockEntityKey<B, T> key)
+    {
+        // Internal code, do not call these directly since they may break in a future update.
+        SyncedBlockEntityData.instance().registerKey(key);
+    }
+
+    /**
+     * Registers a synced level data key into Framework's system. This should be called during
+     * common setup. An exception will be thrown if this is called after the initialization phase of
+     * the game. See {@link SyncedLevelDataKey} for more information.
+     *
+     * @param key the synced level data key instance
+     */
+    public static <T> void registerSyncedLevelDataKey(SyncedLevelDataKey<T> key)
+    {
+        // Internal code, do not call these directly since they may break in a future update.
+        SyncedLevelData.instance().registerKey(key);
+    }
+
+    /**
+     * Registers a synced menu data key into Framework's system. This should be called during
+     * common setup. An exception will be thrown if this is called after the initialization phase of
+     * the game. See {@link SyncedMenuDataKey} for more information.
+     *
+     * @param key the synced menu data key instance
+     */
+    public static <T> void registerSyncedMenuDataKey(SyncedMenuDataKey<T> key)
+    {
+        // Internal code, do not call these directly since they may break in a future update.
+        SyncedMenuData.instance().registerKey(key);
+    }
+
+    /**
+     * Sets the maximum amount of bytes of synced entity data that will be sent to each player per
+     * tick when they start tracking entities. Snapshots that don't fit into the budget are queued
+     * and sent on the following ticks. The default is 65536 bytes and can also be changed with the
+     * system property "framework.initialSyncBudget".
+     *
+     * @param bytes the budget in bytes per player per tick
+     */
+    public static void setInitialSyncBudget(int bytes)
+    {
+        // Internal code, do not call these directly since they may break in a future update.
+        SyncedEntityData.instance().setInitialSyncBudget(bytes);
+    }
+
     public static FrameworkNetworkBuilder createNetworkBuilder(ResourceLocation id, int version)
     {
         // Internal code, do not call these directly since they may break in a future update.
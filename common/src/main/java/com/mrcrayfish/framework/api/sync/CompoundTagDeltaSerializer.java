@@ -0,0 +1,141 @@
+package com.mrcrayfish.framework.api.sync;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.FriendlyByteBuf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A delta serializer for compound tags. The delta is a structural diff that contains the removed
+ * keys and the changed keys of the compound. Changed keys that hold a compound tag in both values
+ * are diffed recursively, otherwise the new tag is written in full.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class CompoundTagDeltaSerializer implements IDeltaDataSerializer<CompoundTag>
+{
+    @Override
+    public void write(FriendlyByteBuf buf, CompoundTag value)
+    {
+        buf.writeNbt(value);
+    }
+
+    @Override
+    public CompoundTag read(FriendlyByteBuf buf)
+    {
+        return buf.readNbt();
+    }
+
+    @Override
+    public Tag write(CompoundTag value)
+    {
+        return value;
+    }
+
+    @Override
+    public CompoundTag read(Tag tag)
+    {
+        return (CompoundTag) tag;
+    }
+
+    @Override
+    public void writeDelta(FriendlyByteBuf buf, CompoundTag previous, CompoundTag current)
+    {
+        List<String> removed = new ArrayList<>();
+        for(String key : previous.getAllKeys())
+        {
+            if(!current.contains(key))
+            {
+                removed.add(key);
+            }
+        }
+        buf.writeVarInt(removed.size());
+        removed.forEach(buf::writeUtf);
+
+        List<String> changed = new ArrayList<>();
+        for(String key : current.getAllKeys())
+        {
+            Tag currentTag = current.get(key);
+            if(currentTag != null && !currentTag.equals(previous.get(key)))
+            {
+                changed.add(key);
+            }
+        }
+        buf.writeVarInt(changed.size());
+        for(String key : changed)
+        {
+            buf.writeUtf(key);
+            Tag previousTag = previous.get(key);
+            Tag currentTag = current.get(key);
+            if(previousTag instanceof CompoundTag previousCompound && currentTag instanceof CompoundTag currentCompound)
+            {
+                buf.writeBoolean(true);
+                this.writeDelta(buf, previousCompound, currentCompound);
+            }
+            else
+            {
+                buf.writeBoolean(false);
+                writeTag(buf, currentTag);
+            }
+        }
+    }
+
+    @Override
+    public CompoundTag readDelta(FriendlyByteBuf buf, CompoundTag previous)
+    {
+        CompoundTag result = previous.copy();
+        this.applyDelta(buf, result);
+        return result;
+    }
+
+    private void applyDelta(FriendlyByteBuf buf, CompoundTag target)
+    {
+        int removedCount = buf.readVarInt();
+        for(int i = 0; i < removedCount; i++)
+        {
+            target.remove(buf.readUtf());
+        }
+        int changedCount = buf.readVarInt();
+        for(int i = 0; i < changedCount; i++)
+        {
+            String key = buf.readUtf();
+            if(buf.readBoolean())
+            {
+                if(!(target.get(key) instanceof CompoundTag))
+                {
+                    target.put(key, new CompoundTag());
+                }
+                this.applyDelta(buf, target.getCompound(key));
+            }
+            else
+            {
+                Tag tag = readTag(buf);
+                if(tag != null)
+                {
+                    target.put(key, tag);
+                }
+            }
+        }
+    }
+
+    @Override
+    public CompoundTag copy(CompoundTag value)
+    {
+        return value.copy();
+    }
+
+    private static void writeTag(FriendlyByteBuf buf, Tag tag)
+    {
+        CompoundTag wrapper = new CompoundTag();
+        wrapper.put("Value", tag);
+        buf.writeNbt(wrapper);
+    }
+
+    private static Tag readTag(FriendlyByteBuf buf)
+    {
+        CompoundTag wrapper = buf.readNbt();
+        return wrapper != null ? wrapper.get("Value") : null;
+    }
+}
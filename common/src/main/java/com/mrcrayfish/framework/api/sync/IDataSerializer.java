@@ -3,6 +3,8 @@ package com.mrcrayfish.framework.api.sync;
 import net.minecraft.nbt.Tag;
 import net.minecraft.network.FriendlyByteBuf;
 
+import java.util.Objects;
+
 /**
  * Author: MrCrayfish
  */
@@ -15,4 +17,29 @@ public interface IDataSerializer<T>
     Tag write(T value);
 
     T read(Tag nbt);
+
+    /**
+     * Tests if two values have the same content. This is used to determine if a new value needs to
+     * be synced to clients. Override this for types that don't implement content based equality.
+     *
+     * @param first  the first value
+     * @param second the second value
+     * @return true if the values have the same content
+     */
+    default boolean contentEquals(T first, T second)
+    {
+        return Objects.equals(first, second);
+    }
+
+    /**
+     * Creates a hash of the content of a value. This is used to detect changes made to a mutable
+     * value in place, so it should be consistent with {@link #contentEquals(Object, Object)}.
+     *
+     * @param value the value to hash
+     * @return the hash of the content of the value
+     */
+    default int contentHash(T value)
+    {
+        return Objects.hashCode(value);
+    }
 }
@@ -0,0 +1,48 @@
+package com.mrcrayfish.framework.api.sync;
+
+import net.minecraft.network.FriendlyByteBuf;
+
+/**
+ * An extension of {@link IDataSerializer} that can send only the changes of a value instead of
+ * the entire value. When a synced data key using a delta serializer changes, the server writes a
+ * delta against the value it last sent to clients, and the client applies the delta to the value
+ * it currently holds. Players that start tracking the entity still receive the full value.
+ * <p>
+ * A delta must be idempotent, in other words applying it to a value that already contains the
+ * changes must not alter the value. This allows a player to safely receive a delta right after a
+ * full value. Framework provides delta serializers for compound tags and for lists, sets and maps,
+ * see {@link Serializers#TAG_COMPOUND_DELTA}, {@link Serializers#list(IDataSerializer)},
+ * {@link Serializers#set(IDataSerializer)} and {@link Serializers#map(IDataSerializer, IDataSerializer)}.
+ * <p>
+ * Author: MrCrayfish
+ */
+public interface IDeltaDataSerializer<T> extends IDataSerializer<T>
+{
+    /**
+     * Writes the changes required to turn the previous value into the current value
+     *
+     * @param buf      the buffer to write to
+     * @param previous the value last sent to clients
+     * @param current  the current value
+     */
+    void writeDelta(FriendlyByteBuf buf, T previous, T current);
+
+    /**
+     * Reads a delta and applies it to the previous value. The previous value must not be modified,
+     * instead a new value with the changes applied should be returned.
+     *
+     * @param buf      the buffer to read from
+     * @param previous the value currently held by the client
+     * @return a new value with the delta applied
+     */
+    T readDelta(FriendlyByteBuf buf, T previous);
+
+    /**
+     * Creates a copy of the given value. The copy is kept by the server as the value last sent to
+     * clients, so it must not be affected by later changes to the original value.
+     *
+     * @param value the value to copy
+     * @return a copy of the value
+     */
+    T copy(T value);
+}
@@ -0,0 +1,304 @@
+package com.mrcrayfish.framework.api.sync;
+
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.FriendlyByteBuf;
+
+/**
+ * A data serializer for a primitive type. Synced data keys using a primitive serializer store
+ * their value as raw bits in a long instead of a boxed object, which allows the value to be read
+ * and written through the primitive accessors of {@link SyncedDataKey} (for example
+ * {@link SyncedDataKey#getInt}) without any allocation. Implement one of the nested interfaces
+ * rather than this interface directly.
+ * <p>
+ * Author: MrCrayfish
+ */
+public interface IPrimitiveDataSerializer<T> extends IDataSerializer<T>
+{
+    long toBits(T value);
+
+    T fromBits(long bits);
+
+    void writeBits(FriendlyByteBuf buf, long bits);
+
+    long readBits(FriendlyByteBuf buf);
+
+    Tag writeBits(long bits);
+
+    long readBits(Tag tag);
+
+    @Override
+    default void write(FriendlyByteBuf buf, T value)
+    {
+        this.writeBits(buf, this.toBits(value));
+    }
+
+    @Override
+    default T read(FriendlyByteBuf buf)
+    {
+        return this.fromBits(this.readBits(buf));
+    }
+
+    @Override
+    default Tag write(T value)
+    {
+        return this.writeBits(this.toBits(value));
+    }
+
+    @Override
+    default T read(Tag tag)
+    {
+        return this.fromBits(this.readBits(tag));
+    }
+
+    /**
+     * A serializer for int values. The bits are the value sign extended to a long.
+     */
+    interface OfInt extends IPrimitiveDataSerializer<Integer>
+    {
+        void writeInt(FriendlyByteBuf buf, int value);
+
+        int readInt(FriendlyByteBuf buf);
+
+        Tag writeInt(int value);
+
+        int readInt(Tag tag);
+
+        @Override
+        default long toBits(Integer value)
+        {
+            return value;
+        }
+
+        @Override
+        default Integer fromBits(long bits)
+        {
+            return (int) bits;
+        }
+
+        @Override
+        default void writeBits(FriendlyByteBuf buf, long bits)
+        {
+            this.writeInt(buf, (int) bits);
+        }
+
+        @Override
+        default long readBits(FriendlyByteBuf buf)
+        {
+            return this.readInt(buf);
+        }
+
+        @Override
+        default Tag writeBits(long bits)
+        {
+            return this.writeInt((int) bits);
+        }
+
+        @Override
+        default long readBits(Tag tag)
+        {
+            return this.readInt(tag);
+        }
+    }
+
+    /**
+     * A serializer for long values. The bits are the value itself.
+     */
+    interface OfLong extends IPrimitiveDataSerializer<Long>
+    {
+        void writeLong(FriendlyByteBuf buf, long value);
+
+        long readLong(FriendlyByteBuf buf);
+
+        Tag writeLong(long value);
+
+        long readLong(Tag tag);
+
+        @Override
+        default long toBits(Long value)
+        {
+            return value;
+        }
+
+        @Override
+        default Long fromBits(long bits)
+        {
+            return bits;
+        }
+
+        @Override
+        default void writeBits(FriendlyByteBuf buf, long bits)
+        {
+            this.writeLong(buf, bits);
+        }
+
+        @Override
+        default long readBits(FriendlyByteBuf buf)
+        {
+            return this.readLong(buf);
+        }
+
+        @Override
+        default Tag writeBits(long bits)
+        {
+            return this.writeLong(bits);
+        }
+
+        @Override
+        default long readBits(Tag tag)
+        {
+            return this.readLong(tag);
+        }
+    }
+
+    /**
+     * A serializer for float values. The bits are the result of {@link Float#floatToIntBits(float)},
+     * so comparing bits has the same result as {@link Float#equals(Object)}.
+     */
+    interface OfFloat extends IPrimitiveDataSerializer<Float>
+    {
+        void writeFloat(FriendlyByteBuf buf, float value);
+
+        float readFloat(FriendlyByteBuf buf);
+
+        Tag writeFloat(float value);
+
+        float readFloat(Tag tag);
+
+        @Override
+        default long toBits(Float value)
+        {
+            return Float.floatToIntBits(value);
+        }
+
+        @Override
+        default Float fromBits(long bits)
+        {
+            return Float.intBitsToFloat((int) bits);
+        }
+
+        @Override
+        default void writeBits(FriendlyByteBuf buf, long bits)
+        {
+            this.writeFloat(buf, Float.intBitsToFloat((int) bits));
+        }
+
+        @Override
+        default long readBits(FriendlyByteBuf buf)
+        {
+            return Float.floatToIntBits(this.readFloat(buf));
+        }
+
+        @Override
+        default Tag writeBits(long bits)
+        {
+            return this.writeFloat(Float.intBitsToFloat((int) bits));
+        }
+
+        @Override
+        default long readBits(Tag tag)
+        {
+            return Float.floatToIntBits(this.readFloat(tag));
+        }
+    }
+
+    /**
+     * A serializer for double values. The bits are the result of {@link Double#doubleToLongBits(double)},
+     * so comparing bits has the same result as {@link Double#equals(Object)}.
+     */
+    interface OfDouble extends IPrimitiveDataSerializer<Double>
+    {
+        void writeDouble(FriendlyByteBuf buf, double value);
+
+        double readDouble(FriendlyByteBuf buf);
+
+        Tag writeDouble(double value);
+
+        double readDouble(Tag tag);
+
+        @Override
+        default long toBits(Double value)
+        {
+            return Double.doubleToLongBits(value);
+        }
+
+        @Override
+        default Double fromBits(long bits)
+        {
+            return Double.longBitsToDouble(bits);
+        }
+
+        @Override
+        default void writeBits(FriendlyByteBuf buf, long bits)
+        {
+            this.writeDouble(buf, Double.longBitsToDouble(bits));
+        }
+
+        @Override
+        default long readBits(FriendlyByteBuf buf)
+        {
+            return Double.doubleToLongBits(this.readDouble(buf));
+        }
+
+        @Override
+        default Tag writeBits(long bits)
+        {
+            return this.writeDouble(Double.longBitsToDouble(bits));
+        }
+
+        @Override
+        default long readBits(Tag tag)
+        {
+            return Double.doubleToLongBits(this.readDouble(tag));
+        }
+    }
+
+    /**
+     * A serializer for boolean values. The bits are 1 for true and 0 for false.
+     */
+    interface OfBoolean extends IPrimitiveDataSerializer<Boolean>
+    {
+        void writeBoolean(FriendlyByteBuf buf, boolean value);
+
+        boolean readBoolean(FriendlyByteBuf buf);
+
+        Tag writeBoolean(boolean value);
+
+        boolean readBoolean(Tag tag);
+
+        @Override
+        default long toBits(Boolean value)
+        {
+            return value ? 1L : 0L;
+        }
+
+        @Override
+        default Boolean fromBits(long bits)
+        {
+            return bits != 0;
+        }
+
+        @Override
+        default void writeBits(FriendlyByteBuf buf, long bits)
+        {
+            this.writeBoolean(buf, bits != 0);
+        }
+
+        @Override
+        default long readBits(FriendlyByteBuf buf)
+        {
+            return this.readBoolean(buf) ? 1L : 0L;
+        }
+
+        @Override
+        default Tag writeBits(long bits)
+        {
+            return this.writeBoolean(bits != 0);
+        }
+
+        @Override
+        default long readBits(Tag tag)
+        {
+            return this.readBoolean(tag) ? 1L : 0L;
+        }
+    }
+}
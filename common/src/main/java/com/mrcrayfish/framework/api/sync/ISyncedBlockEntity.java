@@ -0,0 +1,24 @@
+package com.mrcrayfish.framework.api.sync;
+
+import com.mrcrayfish.framework.blockentity.sync.BlockEntityDataHolder;
+import net.minecraft.nbt.CompoundTag;
+
+/**
+ * Implemented by block entities that hold values of {@link SyncedBlockEntityKey}s. The block entity
+ * creates and owns its {@link BlockEntityDataHolder}, and is responsible for saving and loading it:
+ * <ul>
+ *     <li>Call {@link BlockEntityDataHolder#save(CompoundTag)} from {@code saveAdditional}</li>
+ *     <li>Call {@link BlockEntityDataHolder#load(CompoundTag)} from {@code load}</li>
+ *     <li>Call {@link BlockEntityDataHolder#writeUpdateTag(CompoundTag)} from {@code getUpdateTag},
+ *     so players receive the synced values when the chunk is sent to them</li>
+ *     <li>Return {@code ClientboundBlockEntityDataPacket.create(this)} from {@code getUpdatePacket},
+ *     so the values are also received when the block entity is placed</li>
+ * </ul>
+ * Changes made after the chunk has been sent are synced by Framework at the end of the tick.
+ * <p>
+ * Author: MrCrayfish
+ */
+public interface ISyncedBlockEntity
+{
+    BlockEntityDataHolder getSyncedDataHolder();
+}
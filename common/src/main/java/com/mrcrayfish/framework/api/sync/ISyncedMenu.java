@@ -0,0 +1,20 @@
+package com.mrcrayfish.framework.api.sync;
+
+import com.mrcrayfish.framework.menu.sync.MenuDataHolder;
+
+import java.util.function.Supplier;
+
+/**
+ * Implemented by menus that sync values with {@link SyncedMenuDataKey}s. The menu creates and owns
+ * its {@link MenuDataHolder}. On the server, the menu registers the source of each value with
+ * {@link MenuDataHolder#track(SyncedMenuDataKey, Supplier)}. Framework compares the tracked values
+ * at the end of every tick and sends the changed values to the player viewing the menu. On the
+ * client, values are read from the received values, so sources tracked by the client copy of the
+ * menu are ignored once the server has sent its values.
+ * <p>
+ * Author: MrCrayfish
+ */
+public interface ISyncedMenu
+{
+    MenuDataHolder getSyncedDataHolder();
+}
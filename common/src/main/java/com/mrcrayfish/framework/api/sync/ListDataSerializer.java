@@ -0,0 +1,106 @@
+package com.mrcrayfish.framework.api.sync;
+
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.FriendlyByteBuf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A delta serializer for lists. The delta contains the new size of the list, which removes
+ * elements from the end, and the elements that were added or replaced along with their index.
+ * Elements are compared using {@link Object#equals(Object)} and are expected to be immutable.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class ListDataSerializer<T> implements IDeltaDataSerializer<List<T>>
+{
+    private final IDataSerializer<T> elementSerializer;
+
+    ListDataSerializer(IDataSerializer<T> elementSerializer)
+    {
+        this.elementSerializer = elementSerializer;
+    }
+
+    @Override
+    public void write(FriendlyByteBuf buf, List<T> value)
+    {
+        buf.writeVarInt(value.size());
+        value.forEach(element -> this.elementSerializer.write(buf, element));
+    }
+
+    @Override
+    public List<T> read(FriendlyByteBuf buf)
+    {
+        int size = buf.readVarInt();
+        List<T> list = new ArrayList<>(size);
+        for(int i = 0; i < size; i++)
+        {
+            list.add(this.elementSerializer.read(buf));
+        }
+        return list;
+    }
+
+    @Override
+    public Tag write(List<T> value)
+    {
+        ListTag list = new ListTag();
+        value.forEach(element -> list.add(this.elementSerializer.write(element)));
+        return list;
+    }
+
+    @Override
+    public List<T> read(Tag tag)
+    {
+        ListTag listTag = (ListTag) tag;
+        List<T> list = new ArrayList<>(listTag.size());
+        listTag.forEach(elementTag -> list.add(this.elementSerializer.read(elementTag)));
+        return list;
+    }
+
+    @Override
+    public void writeDelta(FriendlyByteBuf buf, List<T> previous, List<T> current)
+    {
+        List<Integer> changed = new ArrayList<>();
+        for(int i = 0; i < current.size(); i++)
+        {
+            if(i >= previous.size() || !Objects.equals(previous.get(i), current.get(i)))
+            {
+                changed.add(i);
+            }
+        }
+        buf.writeVarInt(current.size());
+        buf.writeVarInt(changed.size());
+        for(int index : changed)
+        {
+            buf.writeVarInt(index);
+            this.elementSerializer.write(buf, current.get(index));
+        }
+    }
+
+    @Override
+    public List<T> readDelta(FriendlyByteBuf buf, List<T> previous)
+    {
+        int size = buf.readVarInt();
+        List<T> result = new ArrayList<>(previous.subList(0, Math.min(size, previous.size())));
+        while(result.size() < size)
+        {
+            result.add(null); // Replaced by the changed elements below
+        }
+        int changedCount = buf.readVarInt();
+        for(int i = 0; i < changedCount; i++)
+        {
+            int index = buf.readVarInt();
+            result.set(index, this.elementSerializer.read(buf));
+        }
+        return result;
+    }
+
+    @Override
+    public List<T> copy(List<T> value)
+    {
+        return new ArrayList<>(value);
+    }
+}
@@ -0,0 +1,133 @@
+package com.mrcrayfish.framework.api.sync;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.FriendlyByteBuf;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A delta serializer for maps. The delta contains the keys that were removed and the entries that
+ * were added or replaced. Keys and values are compared using {@link Object#equals(Object)} and are
+ * expected to be immutable.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class MapDataSerializer<K, V> implements IDeltaDataSerializer<Map<K, V>>
+{
+    private final IDataSerializer<K> keySerializer;
+    private final IDataSerializer<V> valueSerializer;
+
+    MapDataSerializer(IDataSerializer<K> keySerializer, IDataSerializer<V> valueSerializer)
+    {
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+    }
+
+    @Override
+    public void write(FriendlyByteBuf buf, Map<K, V> value)
+    {
+        buf.writeVarInt(value.size());
+        value.forEach((k, v) -> {
+            this.keySerializer.write(buf, k);
+            this.valueSerializer.write(buf, v);
+        });
+    }
+
+    @Override
+    public Map<K, V> read(FriendlyByteBuf buf)
+    {
+        int size = buf.readVarInt();
+        Map<K, V> map = new LinkedHashMap<>();
+        for(int i = 0; i < size; i++)
+        {
+            map.put(this.keySerializer.read(buf), this.valueSerializer.read(buf));
+        }
+        return map;
+    }
+
+    @Override
+    public Tag write(Map<K, V> value)
+    {
+        ListTag list = new ListTag();
+        value.forEach((k, v) -> {
+            CompoundTag entryTag = new CompoundTag();
+            entryTag.put("Key", this.keySerializer.write(k));
+            entryTag.put("Value", this.valueSerializer.write(v));
+            list.add(entryTag);
+        });
+        return list;
+    }
+
+    @Override
+    public Map<K, V> read(Tag tag)
+    {
+        Map<K, V> map = new LinkedHashMap<>();
+        ((ListTag) tag).forEach(element -> {
+            CompoundTag entryTag = (CompoundTag) element;
+            Tag keyTag = entryTag.get("Key");
+            Tag valueTag = entryTag.get("Value");
+            if(keyTag != null && valueTag != null)
+            {
+                map.put(this.keySerializer.read(keyTag), this.valueSerializer.read(valueTag));
+            }
+        });
+        return map;
+    }
+
+    @Override
+    public void writeDelta(FriendlyByteBuf buf, Map<K, V> previous, Map<K, V> current)
+    {
+        List<K> removed = new ArrayList<>();
+        for(K key : previous.keySet())
+        {
+            if(!current.containsKey(key))
+            {
+                removed.add(key);
+            }
+        }
+        List<Map.Entry<K, V>> changed = new ArrayList<>();
+        for(Map.Entry<K, V> entry : current.entrySet())
+        {
+            if(!previous.containsKey(entry.getKey()) || !Objects.equals(previous.get(entry.getKey()), entry.getValue()))
+            {
+                changed.add(entry);
+            }
+        }
+        buf.writeVarInt(removed.size());
+        removed.forEach(key -> this.keySerializer.write(buf, key));
+        buf.writeVarInt(changed.size());
+        changed.forEach(entry -> {
+            this.keySerializer.write(buf, entry.getKey());
+            this.valueSerializer.write(buf, entry.getValue());
+        });
+    }
+
+    @Override
+    public Map<K, V> readDelta(FriendlyByteBuf buf, Map<K, V> previous)
+    {
+        Map<K, V> result = new LinkedHashMap<>(previous);
+        int removedCount = buf.readVarInt();
+        for(int i = 0; i < removedCount; i++)
+        {
+            result.remove(this.keySerializer.read(buf));
+        }
+        int changedCount = buf.readVarInt();
+        for(int i = 0; i < changedCount; i++)
+        {
+            result.put(this.keySerializer.read(buf), this.valueSerializer.read(buf));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<K, V> copy(Map<K, V> value)
+    {
+        return new LinkedHashMap<>(value);
+    }
+}
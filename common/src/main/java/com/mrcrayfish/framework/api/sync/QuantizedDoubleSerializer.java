@@ -0,0 +1,46 @@
+package com.mrcrayfish.framework.api.sync;
+
+import net.minecraft.nbt.DoubleTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.FriendlyByteBuf;
+
+/**
+ * A double serializer that sends values quantized to a range with a limited number of bits. The
+ * full value is still kept on the server and saved to disk, only clients receive the quantized
+ * value.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class QuantizedDoubleSerializer implements IPrimitiveDataSerializer.OfDouble
+{
+    private final Quantizer quantizer;
+
+    QuantizedDoubleSerializer(double min, double max, int bits)
+    {
+        this.quantizer = new Quantizer(min, max, bits, 52);
+    }
+
+    @Override
+    public void writeDouble(FriendlyByteBuf buf, double value)
+    {
+        this.quantizer.write(buf, value);
+    }
+
+    @Override
+    public double readDouble(FriendlyByteBuf buf)
+    {
+        return this.quantizer.read(buf);
+    }
+
+    @Override
+    public Tag writeDouble(double value)
+    {
+        return DoubleTag.valueOf(value);
+    }
+
+    @Override
+    public double readDouble(Tag tag)
+    {
+        return ((DoubleTag) tag).getAsDouble();
+    }
+}
@@ -0,0 +1,46 @@
+package com.mrcrayfish.framework.api.sync;
+
+import net.minecraft.nbt.FloatTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.FriendlyByteBuf;
+
+/**
+ * A float serializer that sends values quantized to a range with a limited number of bits. The
+ * full value is still kept on the server and saved to disk, only clients receive the quantized
+ * value.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class QuantizedFloatSerializer implements IPrimitiveDataSerializer.OfFloat
+{
+    private final Quantizer quantizer;
+
+    QuantizedFloatSerializer(float min, float max, int bits)
+    {
+        this.quantizer = new Quantizer(min, max, bits, 32);
+    }
+
+    @Override
+    public void writeFloat(FriendlyByteBuf buf, float value)
+    {
+        this.quantizer.write(buf, value);
+    }
+
+    @Override
+    public float readFloat(FriendlyByteBuf buf)
+    {
+        return (float) this.quantizer.read(buf);
+    }
+
+    @Override
+    public Tag writeFloat(float value)
+    {
+        return FloatTag.valueOf(value);
+    }
+
+    @Override
+    public float readFloat(Tag tag)
+    {
+        return ((FloatTag) tag).getAsFloat();
+    }
+}
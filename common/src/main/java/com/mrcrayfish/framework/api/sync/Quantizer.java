@@ -0,0 +1,49 @@
+package com.mrcrayfish.framework.api.sync;
+
+import net.minecraft.network.FriendlyByteBuf;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Maps a value within a range to one of a fixed number of evenly spaced levels, which are written
+ * to the network using only as many bytes as needed to hold the given number of bits. Values
+ * outside the range are clamped and NaN is treated as the minimum.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class Quantizer
+{
+    private final double min;
+    private final double range;
+    private final long levels;
+    private final int bytes;
+
+    Quantizer(double min, double max, int bits, int maxBits)
+    {
+        Validate.isTrue(min < max, "The minimum value must be less than the maximum value");
+        Validate.inclusiveBetween(1, maxBits, bits, "The number of bits must be between 1 and " + maxBits);
+        this.min = min;
+        this.range = max - min;
+        this.levels = (1L << bits) - 1;
+        this.bytes = (bits + 7) >> 3;
+    }
+
+    void write(FriendlyByteBuf buf, double value)
+    {
+        double normalized = Double.isNaN(value) ? 0 : Math.min(Math.max((value - this.min) / this.range, 0), 1);
+        long level = Math.round(normalized * this.levels);
+        for(int i = this.bytes - 1; i >= 0; i--)
+        {
+            buf.writeByte((int) (level >>> (i << 3)));
+        }
+    }
+
+    double read(FriendlyByteBuf buf)
+    {
+        long level = 0;
+        for(int i = 0; i < this.bytes; i++)
+        {
+            level = (level << 8) | buf.readUnsignedByte();
+        }
+        return this.min + this.range * Math.min(level, this.levels) / this.levels;
+    }
+}
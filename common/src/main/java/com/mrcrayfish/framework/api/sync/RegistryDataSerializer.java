@@ -0,0 +1,52 @@
+package com.mrcrayfish.framework.api.sync;
+
+import net.minecraft.core.Registry;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.resources.ResourceLocation;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A serializer for objects of a registry. Values are sent using their numeric network id, and are
+ * saved using their registry name.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class RegistryDataSerializer<T> implements IDataSerializer<T>
+{
+    private final Registry<T> registry;
+
+    RegistryDataSerializer(Registry<T> registry)
+    {
+        this.registry = registry;
+    }
+
+    @Override
+    public void write(FriendlyByteBuf buf, T value)
+    {
+        buf.writeId(this.registry, value);
+    }
+
+    @Override
+    public T read(FriendlyByteBuf buf)
+    {
+        T value = buf.readById(this.registry);
+        Validate.validState(value != null, "Received an unknown id for registry %s", this.registry.key().location());
+        return value;
+    }
+
+    @Override
+    public Tag write(T value)
+    {
+        ResourceLocation key = this.registry.getKey(value);
+        Validate.validState(key != null, "Value is not registered in registry %s", this.registry.key().location());
+        return StringTag.valueOf(key.toString());
+    }
+
+    @Override
+    public T read(Tag tag)
+    {
+        return this.registry.get(ResourceLocation.tryParse(tag.getAsString()));
+    }
+}
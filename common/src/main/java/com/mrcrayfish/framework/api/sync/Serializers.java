@@ -1,6 +1,9 @@
 package com.mrcrayfish.framework.api.sync;
 
+import com.mrcrayfish.framework.entity.sync.SyncedEntityData;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.nbt.ByteTag;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.DoubleTag;
@@ -12,41 +15,54 @@ import net.minecraft.nbt.StringTag;
 import net.minecraft.nbt.Tag;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.effect.MobEffect;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.block.Block;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 
 /**
  * Framework provided serializers used for creating a {@link SyncedDataKey}. This covers all
  * primitive types and common objects. You can create your custom serializer by implementing
- * {@link IDataSerializer}.
+ * {@link IDataSerializer}. The boolean, int, long, float and double serializers are also
+ * {@link IPrimitiveDataSerializer}s, which allows keys using them to be accessed without boxing.
+ * Delta serializers for compound tags and collections are provided to reduce the size of updates,
+ * see {@link IDeltaDataSerializer}. Zigzag and quantized serializers are provided for numbers that
+ * can be negative or do not need full precision on clients. Registry objects are sent using their
+ * numeric id, and dictionary serializers send repeated strings as a small id.
  * <p>
  * Author: MrCrayfish
  */
 public class Serializers
 {
-    public static final IDataSerializer<Boolean> BOOLEAN = new IDataSerializer<>()
+    public static final IDataSerializer<Boolean> BOOLEAN = new IPrimitiveDataSerializer.OfBoolean()
     {
         @Override
-        public void write(FriendlyByteBuf buf, Boolean value)
+        public void writeBoolean(FriendlyByteBuf buf, boolean value)
         {
             buf.writeBoolean(value);
         }
 
         @Override
-        public Boolean read(FriendlyByteBuf buf)
+        public boolean readBoolean(FriendlyByteBuf buf)
         {
             return buf.readBoolean();
         }
 
         @Override
-        public Tag write(Boolean value)
+        public Tag writeBoolean(boolean value)
         {
             return ByteTag.valueOf(value);
         }
 
         @Override
-        public Boolean read(Tag tag)
+        public boolean readBoolean(Tag tag)
         {
             return ((ByteTag) tag).getAsByte() != 0;
         }
@@ -106,109 +122,173 @@ public class Serializers
         }
     };
 
-    public static final IDataSerializer<Integer> INTEGER = new IDataSerializer<>()
+    public static final IDataSerializer<Integer> INTEGER = new IPrimitiveDataSerializer.OfInt()
     {
         @Override
-        public void write(FriendlyByteBuf buf, Integer value)
+        public void writeInt(FriendlyByteBuf buf, int value)
         {
             buf.writeVarInt(value);
         }
 
         @Override
-        public Integer read(FriendlyByteBuf buf)
+        public int readInt(FriendlyByteBuf buf)
         {
             return buf.readVarInt();
         }
 
         @Override
-        public Tag write(Integer value)
+        public Tag writeInt(int value)
         {
             return IntTag.valueOf(value);
         }
 
         @Override
-        public Integer read(Tag tag)
+        public int readInt(Tag tag)
         {
             return ((IntTag) tag).getAsInt();
         }
     };
 
-    public static final IDataSerializer<Long> LONG = new IDataSerializer<>()
+    /**
+     * An int serializer using a zigzag encoded varint, so small negative values take as few bytes
+     * as small positive values. Use this instead of {@link #INTEGER} for values that can be negative.
+     */
+    public static final IDataSerializer<Integer> ZIGZAG_INTEGER = new IPrimitiveDataSerializer.OfInt()
     {
         @Override
-        public void write(FriendlyByteBuf buf, Long value)
+        public void writeInt(FriendlyByteBuf buf, int value)
+        {
+            buf.writeVarInt((value << 1) ^ (value >> 31));
+        }
+
+        @Override
+        public int readInt(FriendlyByteBuf buf)
+        {
+            int value = buf.readVarInt();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        @Override
+        public Tag writeInt(int value)
+        {
+            return IntTag.valueOf(value);
+        }
+
+        @Override
+        public int readInt(Tag tag)
+        {
+            return ((IntTag) tag).getAsInt();
+        }
+    };
+
+    public static final IDataSerializer<Long> LONG = new IPrimitiveDataSerializer.OfLong()
+    {
+        @Override
+        public void writeLong(FriendlyByteBuf buf, long value)
         {
             buf.writeLong(value);
         }
 
         @Override
-        public Long read(FriendlyByteBuf buf)
+        public long readLong(FriendlyByteBuf buf)
         {
             return buf.readLong();
         }
 
         @Override
-        public Tag write(Long value)
+        public Tag writeLong(long value)
+        {
+            return LongTag.valueOf(value);
+        }
+
+        @Override
+        public long readLong(Tag tag)
+        {
+            return ((LongTag) tag).getAsLong();
+        }
+    };
+
+    /**
+     * A long serializer using a zigzag encoded varlong. Unlike {@link #LONG}, which always takes
+     * eight bytes, values close to zero only take a few bytes.
+     */
+    public static final IDataSerializer<Long> ZIGZAG_LONG = new IPrimitiveDataSerializer.OfLong()
+    {
+        @Override
+        public void writeLong(FriendlyByteBuf buf, long value)
+        {
+            buf.writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        @Override
+        public long readLong(FriendlyByteBuf buf)
+        {
+            long value = buf.readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        @Override
+        public Tag writeLong(long value)
         {
             return LongTag.valueOf(value);
         }
 
         @Override
-        public Long read(Tag tag)
+        public long readLong(Tag tag)
         {
             return ((LongTag) tag).getAsLong();
         }
     };
 
-    public static final IDataSerializer<Float> FLOAT = new IDataSerializer<>()
+    public static final IDataSerializer<Float> FLOAT = new IPrimitiveDataSerializer.OfFloat()
     {
         @Override
-        public void write(FriendlyByteBuf buf, Float value)
+        public void writeFloat(FriendlyByteBuf buf, float value)
         {
             buf.writeFloat(value);
         }
 
         @Override
-        public Float read(FriendlyByteBuf buf)
+        public float readFloat(FriendlyByteBuf buf)
         {
             return buf.readFloat();
         }
 
         @Override
-        public Tag write(Float value)
+        public Tag writeFloat(float value)
         {
             return FloatTag.valueOf(value);
         }
 
         @Override
-        public Float read(Tag tag)
+        public float readFloat(Tag tag)
         {
             return ((FloatTag) tag).getAsFloat();
         }
     };
 
-    public static final IDataSerializer<Double> DOUBLE = new IDataSerializer<>()
+    public static final IDataSerializer<Double> DOUBLE = new IPrimitiveDataSerializer.OfDouble()
     {
         @Override
-        public void write(FriendlyByteBuf buf, Double value)
+        public void writeDouble(FriendlyByteBuf buf, double value)
         {
             buf.writeDouble(value);
         }
 
         @Override
-        public Double read(FriendlyByteBuf buf)
+        public double readDouble(FriendlyByteBuf buf)
         {
             return buf.readDouble();
         }
 
         @Override
-        public Tag write(Double value)
+        public Tag writeDouble(double value)
         {
             return DoubleTag.valueOf(value);
         }
 
         @Override
-        public Double read(Tag tag)
+        public double readDouble(Tag tag)
         {
             return ((DoubleTag) tag).getAsDouble();
         }
@@ -378,6 +458,21 @@ public class Serializers
         {
             return ItemStack.of((CompoundTag) tag);
         }
+
+        @Override
+        public boolean contentEquals(ItemStack first, ItemStack second)
+        {
+            return ItemStack.matches(first, second);
+        }
+
+        @Override
+        public int contentHash(ItemStack value)
+        {
+            int hash = value.getItem().hashCode();
+            hash = 31 * hash + value.getCount();
+            hash = 31 * hash + Objects.hashCode(value.getTag());
+            return hash;
+        }
     };
 
     public static final IDataSerializer<ResourceLocation> RESOURCE_LOCATION = new IDataSerializer<>()
@@ -406,4 +501,160 @@ public class Serializers
             return ResourceLocation.tryParse(tag.getAsString());
         }
     };
+
+    public static final IDataSerializer<Item> ITEM = registry(BuiltInRegistries.ITEM);
+
+    public static final IDataSerializer<Block> BLOCK = registry(BuiltInRegistries.BLOCK);
+
+    public static final IDataSerializer<EntityType<?>> ENTITY_TYPE = registry(BuiltInRegistries.ENTITY_TYPE);
+
+    public static final IDataSerializer<MobEffect> MOB_EFFECT = registry(BuiltInRegistries.MOB_EFFECT);
+
+    /**
+     * A string serializer that only sends a string to a player the first time it's synced, after
+     * which it's referenced by a small id. Use this instead of {@link #STRING} for keys that switch
+     * between a limited set of values, as every string synced is remembered for the rest of the
+     * session. The dictionary holds 4096 strings by default, which can be changed with the system
+     * property "framework.syncDictionarySize". Once it is full, it starts over at the end of the
+     * tick and every string is sent again the next time it's used.
+     */
+    public static final IDataSerializer<String> DICTIONARY_STRING = new IDataSerializer<>()
+    {
+        @Override
+        public void write(FriendlyByteBuf buf, String value)
+        {
+            SyncedEntityData.instance().getStringDictionary().write(buf, value);
+        }
+
+        @Override
+        public String read(FriendlyByteBuf buf)
+        {
+            return SyncedEntityData.instance().getStringDictionary().read(buf);
+        }
+
+        @Override
+        public Tag write(String value)
+        {
+            return StringTag.valueOf(value);
+        }
+
+        @Override
+        public String read(Tag tag)
+        {
+            return tag.getAsString();
+        }
+    };
+
+    /**
+     * A resource location serializer using the same dictionary as {@link #DICTIONARY_STRING}, so
+     * it shares the same size limit. Use this instead of {@link #RESOURCE_LOCATION} for keys that
+     * switch between a limited set of ids.
+     */
+    public static final IDataSerializer<ResourceLocation> DICTIONARY_RESOURCE_LOCATION = new IDataSerializer<>()
+    {
+        @Override
+        public void write(FriendlyByteBuf buf, ResourceLocation value)
+        {
+            SyncedEntityData.instance().getStringDictionary().write(buf, value.toString());
+        }
+
+        @Override
+        public ResourceLocation read(FriendlyByteBuf buf)
+        {
+            return new ResourceLocation(SyncedEntityData.instance().getStringDictionary().read(buf));
+        }
+
+        @Override
+        public Tag write(ResourceLocation value)
+        {
+            return StringTag.valueOf(value.toString());
+        }
+
+        @Override
+        public ResourceLocation read(Tag tag)
+        {
+            return ResourceLocation.tryParse(tag.getAsString());
+        }
+    };
+
+    /**
+     * A compound tag serializer that only sends the changed keys of the compound to clients. Use
+     * this instead of {@link #TAG_COMPOUND} for large compounds that change a few keys at a time.
+     */
+    public static final IDeltaDataSerializer<CompoundTag> TAG_COMPOUND_DELTA = new CompoundTagDeltaSerializer();
+
+    /**
+     * Creates a list serializer that only sends the added, removed and replaced elements to clients.
+     *
+     * @param elementSerializer the serializer for the elements of the list
+     * @return a new delta serializer for lists
+     */
+    public static <T> IDeltaDataSerializer<List<T>> list(IDataSerializer<T> elementSerializer)
+    {
+        return new ListDataSerializer<>(elementSerializer);
+    }
+
+    /**
+     * Creates a set serializer that only sends the added and removed elements to clients.
+     *
+     * @param elementSerializer the serializer for the elements of the set
+     * @return a new delta serializer for sets
+     */
+    public static <T> IDeltaDataSerializer<Set<T>> set(IDataSerializer<T> elementSerializer)
+    {
+        return new SetDataSerializer<>(elementSerializer);
+    }
+
+    /**
+     * Creates a map serializer that only sends the added, removed and replaced entries to clients.
+     *
+     * @param keySerializer   the serializer for the keys of the map
+     * @param valueSerializer the serializer for the values of the map
+     * @return a new delta serializer for maps
+     */
+    public static <K, V> IDeltaDataSerializer<Map<K, V>> map(IDataSerializer<K> keySerializer, IDataSerializer<V> valueSerializer)
+    {
+        return new MapDataSerializer<>(keySerializer, valueSerializer);
+    }
+
+    /**
+     * Creates a serializer for the objects of a registry. Values are sent using their numeric
+     * network id instead of their registry name.
+     *
+     * @param registry the registry of the objects
+     * @return a new registry serializer
+     */
+    public static <T> IDataSerializer<T> registry(Registry<T> registry)
+    {
+        return new RegistryDataSerializer<>(registry);
+    }
+
+    /**
+     * Creates a float serializer that sends values quantized to the given range. Clients receive
+     * the value rounded to one of 2^bits evenly spaced levels, which suits values such as meters or
+     * progress that do not need full precision. Values outside the range are clamped.
+     *
+     * @param min  the minimum value
+     * @param max  the maximum value
+     * @param bits the number of bits used to send a value, between 1 and 32
+     * @return a new quantized float serializer
+     */
+    public static IDataSerializer<Float> quantizedFloat(float min, float max, int bits)
+    {
+        return new QuantizedFloatSerializer(min, max, bits);
+    }
+
+    /**
+     * Creates a double serializer that sends values quantized to the given range. See
+     * {@link #quantizedFloat(float, float, int)} for more details.
+     *
+     * @param min  the minimum value
+     * @param max  the maximum value
+     * @param bits the number of bits used to send a value, between 1 and 52
+     * @return a new quantized double serializer
+     */
+    public static IDataSerializer<Double> quantizedDouble(double min, double max, int bits)
+    {
+        return new QuantizedDoubleSerializer(min, max, bits);
+    }
 }
@@ -0,0 +1,109 @@
+package com.mrcrayfish.framework.api.sync;
+
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.FriendlyByteBuf;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A delta serializer for sets. The delta contains the elements that were removed and the elements
+ * that were added. Elements are expected to be immutable.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class SetDataSerializer<T> implements IDeltaDataSerializer<Set<T>>
+{
+    private final IDataSerializer<T> elementSerializer;
+
+    SetDataSerializer(IDataSerializer<T> elementSerializer)
+    {
+        this.elementSerializer = elementSerializer;
+    }
+
+    @Override
+    public void write(FriendlyByteBuf buf, Set<T> value)
+    {
+        buf.writeVarInt(value.size());
+        value.forEach(element -> this.elementSerializer.write(buf, element));
+    }
+
+    @Override
+    public Set<T> read(FriendlyByteBuf buf)
+    {
+        int size = buf.readVarInt();
+        Set<T> set = new LinkedHashSet<>();
+        for(int i = 0; i < size; i++)
+        {
+            set.add(this.elementSerializer.read(buf));
+        }
+        return set;
+    }
+
+    @Override
+    public Tag write(Set<T> value)
+    {
+        ListTag list = new ListTag();
+        value.forEach(element -> list.add(this.elementSerializer.write(element)));
+        return list;
+    }
+
+    @Override
+    public Set<T> read(Tag tag)
+    {
+        Set<T> set = new LinkedHashSet<>();
+        ((ListTag) tag).forEach(elementTag -> set.add(this.elementSerializer.read(elementTag)));
+        return set;
+    }
+
+    @Override
+    public void writeDelta(FriendlyByteBuf buf, Set<T> previous, Set<T> current)
+    {
+        List<T> removed = new ArrayList<>();
+        for(T element : previous)
+        {
+            if(!current.contains(element))
+            {
+                removed.add(element);
+            }
+        }
+        List<T> added = new ArrayList<>();
+        for(T element : current)
+        {
+            if(!previous.contains(element))
+            {
+                added.add(element);
+            }
+        }
+        buf.writeVarInt(removed.size());
+        removed.forEach(element -> this.elementSerializer.write(buf, element));
+        buf.writeVarInt(added.size());
+        added.forEach(element -> this.elementSerializer.write(buf, element));
+    }
+
+    @Override
+    public Set<T> readDelta(FriendlyByteBuf buf, Set<T> previous)
+    {
+        Set<T> result = new LinkedHashSet<>(previous);
+        int removedCount = buf.readVarInt();
+        for(int i = 0; i < removedCount; i++)
+        {
+            result.remove(this.elementSerializer.read(buf));
+        }
+        int addedCount = buf.readVarInt();
+        for(int i = 0; i < addedCount; i++)
+        {
+            result.add(this.elementSerializer.read(buf));
+        }
+        return result;
+    }
+
+    @Override
+    public Set<T> copy(Set<T> value)
+    {
+        return new LinkedHashSet<>(value);
+    }
+}
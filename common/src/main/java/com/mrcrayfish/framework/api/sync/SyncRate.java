@@ -0,0 +1,81 @@
+package com.mrcrayfish.framework.api.sync;
+
+import it.unimi.dsi.fastutil.doubles.Double2IntMap;
+import it.unimi.dsi.fastutil.doubles.Double2IntSortedMap;
+
+/**
+ * Controls how often changes to a synced data key are sent to clients. A key has a minimum
+ * interval between updates, and optionally distance tiers that increase the interval for players
+ * tracking the entity from further away. Changes made within an interval are not lost, instead
+ * the latest value is sent once the interval has passed. Use {@link SyncedDataKey.Builder#syncInterval(int)}
+ * and {@link SyncedDataKey.Builder#syncDistanceTier(double, int)} to configure the rate of a key.
+ * <p>
+ * Author: MrCrayfish
+ */
+public final class SyncRate
+{
+    /**
+     * Sends changes to all clients at the end of the tick they were made in
+     */
+    public static final SyncRate DEFAULT = new SyncRate(1, new double[0], new int[0]);
+
+    private final int interval;
+    private final double[] tierDistancesSqr;
+    private final int[] tierIntervals;
+
+    private SyncRate(int interval, double[] tierDistancesSqr, int[] tierIntervals)
+    {
+        this.interval = interval;
+        this.tierDistancesSqr = tierDistancesSqr;
+        this.tierIntervals = tierIntervals;
+    }
+
+    static SyncRate create(int interval, Double2IntSortedMap tiers)
+    {
+        if(interval <= 1 && tiers.isEmpty())
+            return DEFAULT;
+
+        double[] distancesSqr = new double[tiers.size()];
+        int[] intervals = new int[tiers.size()];
+        int index = 0;
+        for(Double2IntMap.Entry entry : tiers.double2IntEntrySet())
+        {
+            distancesSqr[index] = entry.getDoubleKey() * entry.getDoubleKey();
+            intervals[index] = Math.max(interval, entry.getIntValue());
+            index++;
+        }
+        return new SyncRate(Math.max(1, interval), distancesSqr, intervals);
+    }
+
+    /**
+     * @return the minimum amount of ticks between updates sent to any client
+     */
+    public int interval()
+    {
+        return this.interval;
+    }
+
+    /**
+     * @return true if the interval depends on the distance of the tracking player
+     */
+    public boolean hasDistanceTiers()
+    {
+        return this.tierIntervals.length > 0;
+    }
+
+    /**
+     * Gets the interval for a player tracking the entity at the given distance
+     *
+     * @param distanceSqr the squared distance between the tracking player and the entity
+     * @return the minimum amount of ticks between updates sent to the player
+     */
+    public int getInterval(double distanceSqr)
+    {
+        int result = this.interval;
+        for(int i = 0; i < this.tierDistancesSqr.length && distanceSqr >= this.tierDistancesSqr[i]; i++)
+        {
+            result = this.tierIntervals[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,121 @@
+package com.mrcrayfish.framework.api.sync;
+
+import com.mrcrayfish.framework.blockentity.sync.SyncedBlockEntityData;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import org.apache.commons.lang3.Validate;
+
+import java.util.function.Supplier;
+
+/**
+ * A synced data key for block entities. Works like {@link SyncedDataKey}, using the same
+ * serializers, but the value is held by a block entity implementing {@link ISyncedBlockEntity}.
+ * Changed values are sent at the end of the tick, with all block entities of a chunk combined
+ * into a single message to the players watching that chunk.
+ * <p>
+ * Author: MrCrayfish
+ */
+public record SyncedBlockEntityKey<B extends BlockEntity, T>(ResourceLocation id, Class<B> blockEntityClass, IDataSerializer<T> serializer, Supplier<T> defaultValueSupplier, boolean save, SyncedDataKey.SyncMode syncMode)
+{
+    public void setValue(B blockEntity, T value)
+    {
+        SyncedBlockEntityData.instance().set(blockEntity, this, value);
+    }
+
+    public T getValue(B blockEntity)
+    {
+        return SyncedBlockEntityData.instance().get(blockEntity, this);
+    }
+
+    /**
+     * Marks the value of this key as changed so it will be synced to clients. Call this after
+     * changing a mutable value, like a compound tag, in place.
+     */
+    public void markDirty(B blockEntity)
+    {
+        SyncedBlockEntityData.instance().markDirty(blockEntity, this);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if(this == o) return true;
+        if(o == null || getClass() != o.getClass()) return false;
+        SyncedBlockEntityKey<?, ?> that = (SyncedBlockEntityKey<?, ?>) o;
+        return this.id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return this.id.hashCode();
+    }
+
+    public static <B extends BlockEntity, T> Builder<B, T> builder(Class<B> blockEntityClass, IDataSerializer<T> serializer)
+    {
+        return new Builder<>(blockEntityClass, serializer);
+    }
+
+    public static class Builder<B extends BlockEntity, T>
+    {
+        private final Class<B> blockEntityClass;
+        private final IDataSerializer<T> serializer;
+        private ResourceLocation id;
+        private Supplier<T> defaultValueSupplier;
+        private boolean save = false;
+        private SyncedDataKey.SyncMode syncMode = SyncedDataKey.SyncMode.ALL;
+
+        private Builder(Class<B> blockEntityClass, IDataSerializer<T> serializer)
+        {
+            this.blockEntityClass = blockEntityClass;
+            this.serializer = serializer;
+        }
+
+        public SyncedBlockEntityKey<B, T> build()
+        {
+            Validate.notNull(this.id, "Missing 'id' when building synced block entity key");
+            Validate.notNull(this.defaultValueSupplier, "Missing 'defaultValueSupplier' when building synced block entity key");
+            Validate.isTrue(ISyncedBlockEntity.class.isAssignableFrom(this.blockEntityClass), "Block entity class %s must implement ISyncedBlockEntity", this.blockEntityClass.getName());
+            return new SyncedBlockEntityKey<>(this.id, this.blockEntityClass, this.serializer, this.defaultValueSupplier, this.save, this.syncMode);
+        }
+
+        /**
+         * Sets the id for the synced key. This is a required property.
+         */
+        public Builder<B, T> id(ResourceLocation id)
+        {
+            this.id = id;
+            return this;
+        }
+
+        /**
+         * Sets the default value supplier for the synced key. This is a required property.
+         */
+        public Builder<B, T> defaultValueSupplier(Supplier<T> defaultValueSupplier)
+        {
+            this.defaultValueSupplier = defaultValueSupplier;
+            return this;
+        }
+
+        /**
+         * Saves this synced key with the block entity, see {@link ISyncedBlockEntity} for details.
+         */
+        public Builder<B, T> saveToFile()
+        {
+            this.save = true;
+            return this;
+        }
+
+        /**
+         * The syncing method to use when sending data to clients. Block entities have no self or
+         * tracking entities, so only {@link SyncedDataKey.SyncMode#ALL}, which syncs the key to
+         * players watching the chunk, and {@link SyncedDataKey.SyncMode#NONE} are supported.
+         */
+        public Builder<B, T> syncMode(SyncedDataKey.SyncMode mode)
+        {
+            Validate.isTrue(mode == SyncedDataKey.SyncMode.ALL || mode == SyncedDataKey.SyncMode.NONE, "Synced block entity keys only support the ALL and NONE sync modes");
+            this.syncMode = mode;
+            return this;
+        }
+    }
+}
@@ -1,19 +1,29 @@
 package com.mrcrayfish.framework.api.sync;
 
 import com.mrcrayfish.framework.entity.sync.SyncedEntityData;
+import it.unimi.dsi.fastutil.doubles.Double2IntAVLTreeMap;
+import it.unimi.dsi.fastutil.doubles.Double2IntSortedMap;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.Entity;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.tuple.Pair;
 
+import javax.annotation.Nullable;
 import java.util.Objects;
+import java.util.function.BiPredicate;
 import java.util.function.Supplier;
 
 /**
  * Author: MrCrayfish
  */
-public record SyncedDataKey<E extends Entity, T>(Pair<ResourceLocation, ResourceLocation> pairKey, ResourceLocation id, SyncedClassKey<E> classKey, IDataSerializer<T> serializer, Supplier<T> defaultValueSupplier, boolean save, boolean persistent, SyncMode syncMode)
+public record SyncedDataKey<E extends Entity, T>(Pair<ResourceLocation, ResourceLocation> pairKey, ResourceLocation id, SyncedClassKey<E> classKey, IDataSerializer<T> serializer, Supplier<T> defaultValueSupplier, boolean save, boolean persistent, SyncMode syncMode, SyncRate syncRate, boolean indexed, @Nullable BiPredicate<Entity, ServerPlayer> visibility)
 {
+    public SyncedDataKey(Pair<ResourceLocation, ResourceLocation> pairKey, ResourceLocation id, SyncedClassKey<E> classKey, IDataSerializer<T> serializer, Supplier<T> defaultValueSupplier, boolean save, boolean persistent, SyncMode syncMode)
+    {
+        this(pairKey, id, classKey, serializer, defaultValueSupplier, save, persistent, syncMode, SyncRate.DEFAULT, false, null);
+    }
+
     public void setValue(E entity, T value)
     {
         SyncedEntityData.instance().set(entity, this, value);
@@ -24,6 +34,144 @@ public record SyncedDataKey<E extends Entity, T>(Pair<ResourceLocation, Resource
         return SyncedEntityData.instance().get(entity, this);
     }
 
+    /**
+     * Sets the value of this key from any thread. The value is applied at the end of the server tick.
+     * See {@link SyncedEntityData#setAsync} for details.
+     */
+    public void setValueAsync(E entity, T value)
+    {
+        SyncedEntityData.instance().setAsync(entity, this, value);
+    }
+
+    /**
+     * Marks the value of this key as changed so it will be synced to clients. Call this after
+     * changing a mutable value, like a compound tag, in place.
+     */
+    public void markDirty(E entity)
+    {
+        SyncedEntityData.instance().markDirty(entity, this);
+    }
+
+    /**
+     * Requests the value of this key for an entity from the server. This can only be called on the
+     * client and the key must use {@link SyncMode#ON_DEMAND}. The client will receive the value and
+     * any changes to it until the subscription times out, so call this again periodically while
+     * the value is needed. See {@link SyncedEntityData#setOnDemandTimeout}.
+     */
+    public void requestValue(E entity)
+    {
+        SyncedEntityData.instance().requestOnDemand(entity, this, true);
+    }
+
+    /**
+     * Releases a subscription made with {@link #requestValue}, for example when a screen showing
+     * the value is closed. This can only be called on the client.
+     */
+    public void releaseValue(E entity)
+    {
+        SyncedEntityData.instance().requestOnDemand(entity, this, false);
+    }
+
+    /**
+     * Gets the value of this key as an int without boxing if the key uses a
+     * {@link IPrimitiveDataSerializer.OfInt}, such as {@link Serializers#INTEGER}.
+     */
+    @SuppressWarnings("unchecked")
+    public int getInt(E entity)
+    {
+        return SyncedEntityData.instance().getInt(entity, (SyncedDataKey<E, Integer>) this);
+    }
+
+    /**
+     * Sets the value of this key as an int without boxing if the key uses a
+     * {@link IPrimitiveDataSerializer.OfInt}, such as {@link Serializers#INTEGER}.
+     */
+    @SuppressWarnings("unchecked")
+    public void setInt(E entity, int value)
+    {
+        SyncedEntityData.instance().setInt(entity, (SyncedDataKey<E, Integer>) this, value);
+    }
+
+    /**
+     * Gets the value of this key as a long without boxing if the key uses a
+     * {@link IPrimitiveDataSerializer.OfLong}, such as {@link Serializers#LONG}.
+     */
+    @SuppressWarnings("unchecked")
+    public long getLong(E entity)
+    {
+        return SyncedEntityData.instance().getLong(entity, (SyncedDataKey<E, Long>) this);
+    }
+
+    /**
+     * Sets the value of this key as a long without boxing if the key uses a
+     * {@link IPrimitiveDataSerializer.OfLong}, such as {@link Serializers#LONG}.
+     */
+    @SuppressWarnings("unchecked")
+    public void setLong(E entity, long value)
+    {
+        SyncedEntityData.instance().setLong(entity, (SyncedDataKey<E, Long>) this, value);
+    }
+
+    /**
+     * Gets the value of this key as a float without boxing if the key uses a
+     * {@link IPrimitiveDataSerializer.OfFloat}, such as {@link Serializers#FLOAT}.
+     */
+    @SuppressWarnings("unchecked")
+    public float getFloat(E entity)
+    {
+        return SyncedEntityData.instance().getFloat(entity, (SyncedDataKey<E, Float>) this);
+    }
+
+    /**
+     * Sets the value of this key as a float without boxing if the key uses a
+     * {@link IPrimitiveDataSerializer.OfFloat}, such as {@link Serializers#FLOAT}.
+     */
+    @SuppressWarnings("unchecked")
+    public void setFloat(E entity, float value)
+    {
+        SyncedEntityData.instance().setFloat(entity, (SyncedDataKey<E, Float>) this, value);
+    }
+
+    /**
+     * Gets the value of this key as a double without boxing if the key uses a
+     * {@link IPrimitiveDataSerializer.OfDouble}, such as {@link Serializers#DOUBLE}.
+     */
+    @SuppressWarnings("unchecked")
+    public double getDouble(E entity)
+    {
+        return SyncedEntityData.instance().getDouble(entity, (SyncedDataKey<E, Double>) this);
+    }
+
+    /**
+     * Sets the value of this key as a double without boxing if the key uses a
+     * {@link IPrimitiveDataSerializer.OfDouble}, such as {@link Serializers#DOUBLE}.
+     */
+    @SuppressWarnings("unchecked")
+    public void setDouble(E entity, double value)
+    {
+        SyncedEntityData.instance().setDouble(entity, (SyncedDataKey<E, Double>) this, value);
+    }
+
+    /**
+     * Gets the value of this key as a boolean without boxing if the key uses a
+     * {@link IPrimitiveDataSerializer.OfBoolean}, such as {@link Serializers#BOOLEAN}.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean getBoolean(E entity)
+    {
+        return SyncedEntityData.instance().getBoolean(entity, (SyncedDataKey<E, Boolean>) this);
+    }
+
+    /**
+     * Sets the value of this key as a boolean without boxing if the key uses a
+     * {@link IPrimitiveDataSerializer.OfBoolean}, such as {@link Serializers#BOOLEAN}.
+     */
+    @SuppressWarnings("unchecked")
+    public void setBoolean(E entity, boolean value)
+    {
+        SyncedEntityData.instance().setBoolean(entity, (SyncedDataKey<E, Boolean>) this, value);
+    }
+
     @Override
     public boolean equals(Object o)
     {
@@ -62,15 +210,30 @@ public record SyncedDataKey<E extends Entity, T>(Pair<ResourceLocation, Resource
          * Only allows the key to be synced to entity holding the data. Any players tracking the entity
          * will not receive the data on their clients.
          */
-        SELF_ONLY(false, true);
+        SELF_ONLY(false, true),
+
+        /**
+         * Only syncs the key to players that request it, for data that is only needed when a player
+         * opens a screen or inspects an entity. A player can request the key of an entity they are
+         * tracking, or of themselves, with {@link SyncedDataKey#requestValue}. The player receives
+         * the value and any changes until the subscription times out or is released.
+         */
+        ON_DEMAND(false, false, true);
 
         final boolean tracking;
         final boolean self;
+        final boolean onDemand;
 
         SyncMode(boolean tracking, boolean self)
+        {
+            this(tracking, self, false);
+        }
+
+        SyncMode(boolean tracking, boolean self, boolean onDemand)
         {
             this.tracking = tracking;
             this.self = self;
+            this.onDemand = onDemand;
         }
 
         public boolean isTracking()
@@ -82,6 +245,11 @@ public record SyncedDataKey<E extends Entity, T>(Pair<ResourceLocation, Resource
         {
             return this.self;
         }
+
+        public boolean isOnDemand()
+        {
+            return this.onDemand;
+        }
     }
 
     public static <E extends Entity, T> Builder<E, T> builder(SyncedClassKey<E> entityClass, IDataSerializer<T> serializer)
@@ -98,6 +266,11 @@ public record SyncedDataKey<E extends Entity, T>(Pair<ResourceLocation, Resource
         private boolean save = false;
         private boolean persistent = true;
         private SyncMode syncMode = SyncMode.ALL;
+        private int syncInterval = 1;
+        private final Double2IntSortedMap syncDistanceTiers = new Double2IntAVLTreeMap();
+        private boolean indexed = false;
+        @Nullable
+        private BiPredicate<Entity, ServerPlayer> visibility;
 
         private Builder(SyncedClassKey<E> classKey, IDataSerializer<T> serializer)
         {
@@ -110,7 +283,7 @@ public record SyncedDataKey<E extends Entity, T>(Pair<ResourceLocation, Resource
             Validate.notNull(this.id, "Missing 'id' when building synced data key");
             Validate.notNull(this.defaultValueSupplier, "Missing 'defaultValueSupplier' when building synced data key");
             Pair<ResourceLocation, ResourceLocation> pairKey = Pair.of(this.classKey.id(), this.id);
-            return new SyncedDataKey<>(pairKey, this.id, this.classKey, this.serializer, this.defaultValueSupplier, this.save, this.persistent, this.syncMode);
+            return new SyncedDataKey<>(pairKey, this.id, this.classKey, this.serializer, this.defaultValueSupplier, this.save, this.persistent, this.syncMode, SyncRate.create(this.syncInterval, this.syncDistanceTiers), this.indexed, this.visibility);
         }
 
         /**
@@ -180,5 +353,59 @@ public record SyncedDataKey<E extends Entity, T>(Pair<ResourceLocation, Resource
             this.syncMode = mode;
             return this;
         }
+
+        /**
+         * Indexes the entities that hold a non-default value for this key in each level. This allows
+         * them to be visited with {@link SyncedEntityData#forEachNonDefault} without iterating every
+         * loaded entity, at the cost of updating the index whenever the value changes.
+         */
+        public Builder<E, T> indexed()
+        {
+            this.indexed = true;
+            return this;
+        }
+
+        /**
+         * Only syncs this key to players tracking the entity if the given predicate passes for them.
+         * This can be used for data that should only be visible to a team or to players with certain
+         * permissions. The entity itself always receives the key if the sync mode allows it.
+         * <p>
+         * The results are cached for each player tracking the entity. When something the predicate
+         * depends on changes, call {@link SyncedEntityData#invalidateVisibility(Entity)} or
+         * {@link SyncedEntityData#invalidateVisibilityFor(ServerPlayer)}. Players that can no longer
+         * see the key are sent the default value, and receive the current value again once they
+         * can see it.
+         */
+        @SuppressWarnings("unchecked")
+        public Builder<E, T> visibleTo(BiPredicate<E, ServerPlayer> predicate)
+        {
+            this.visibility = (BiPredicate<Entity, ServerPlayer>) predicate;
+            return this;
+        }
+
+        /**
+         * Sets the minimum amount of ticks between updates of this key sent to clients. If the value
+         * changes multiple times within the interval, only the latest value is sent. This is useful
+         * for values that change every tick, like animation progress. The default is one tick.
+         */
+        public Builder<E, T> syncInterval(int ticks)
+        {
+            Validate.isTrue(ticks > 0, "Sync interval must be greater than zero");
+            this.syncInterval = ticks;
+            return this;
+        }
+
+        /**
+         * Adds a distance tier to this key. Players tracking the entity from at least the given
+         * distance (in blocks) will only receive updates every given amount of ticks. Multiple tiers
+         * can be added, and the tier with the largest distance that applies will be used.
+         */
+        public Builder<E, T> syncDistanceTier(double distance, int ticks)
+        {
+            Validate.isTrue(distance > 0, "Distance must be greater than zero");
+            Validate.isTrue(ticks > 0, "Sync interval must be greater than zero");
+            this.syncDistanceTiers.put(distance, ticks);
+            return this;
+        }
     }
 }
@@ -0,0 +1,129 @@
+package com.mrcrayfish.framework.api.sync;
+
+import com.mrcrayfish.framework.level.sync.SyncedLevelData;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.Level;
+import org.apache.commons.lang3.Validate;
+
+import java.util.function.Supplier;
+
+/**
+ * A synced data key for state that belongs to a level rather than an entity, like a world timer
+ * or an event in progress. A key is either held separately by each level, or server wide, in which
+ * case every level shares the same value. Values are stored in the saved data of the level (the
+ * overworld for server wide keys), sent to players when they log in or change dimension, and changes
+ * are broadcast once at the end of the server tick.
+ * <p>
+ * Author: MrCrayfish
+ */
+public record SyncedLevelDataKey<T>(ResourceLocation id, IDataSerializer<T> serializer, Supplier<T> defaultValueSupplier, boolean save, boolean serverWide, SyncedDataKey.SyncMode syncMode)
+{
+    public void setValue(Level level, T value)
+    {
+        SyncedLevelData.instance().set(level, this, value);
+    }
+
+    public T getValue(Level level)
+    {
+        return SyncedLevelData.instance().get(level, this);
+    }
+
+    /**
+     * Marks the value of this key as changed so it will be synced to clients. Call this after
+     * changing a mutable value, like a compound tag, in place.
+     */
+    public void markDirty(Level level)
+    {
+        SyncedLevelData.instance().markDirty(level, this);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if(this == o) return true;
+        if(o == null || getClass() != o.getClass()) return false;
+        SyncedLevelDataKey<?> that = (SyncedLevelDataKey<?>) o;
+        return this.id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return this.id.hashCode();
+    }
+
+    public static <T> Builder<T> builder(IDataSerializer<T> serializer)
+    {
+        return new Builder<>(serializer);
+    }
+
+    public static class Builder<T>
+    {
+        private final IDataSerializer<T> serializer;
+        private ResourceLocation id;
+        private Supplier<T> defaultValueSupplier;
+        private boolean save = false;
+        private boolean serverWide = false;
+        private SyncedDataKey.SyncMode syncMode = SyncedDataKey.SyncMode.ALL;
+
+        private Builder(IDataSerializer<T> serializer)
+        {
+            this.serializer = serializer;
+        }
+
+        public SyncedLevelDataKey<T> build()
+        {
+            Validate.notNull(this.id, "Missing 'id' when building synced level data key");
+            Validate.notNull(this.defaultValueSupplier, "Missing 'defaultValueSupplier' when building synced level data key");
+            return new SyncedLevelDataKey<>(this.id, this.serializer, this.defaultValueSupplier, this.save, this.serverWide, this.syncMode);
+        }
+
+        /**
+         * Sets the id for the synced key. This is a required property.
+         */
+        public Builder<T> id(ResourceLocation id)
+        {
+            this.id = id;
+            return this;
+        }
+
+        /**
+         * Sets the default value supplier for the synced key. This is a required property.
+         */
+        public Builder<T> defaultValueSupplier(Supplier<T> defaultValueSupplier)
+        {
+            this.defaultValueSupplier = defaultValueSupplier;
+            return this;
+        }
+
+        /**
+         * Saves this synced key to the saved data of the level
+         */
+        public Builder<T> saveToFile()
+        {
+            this.save = true;
+            return this;
+        }
+
+        /**
+         * Makes the value of this key shared by every level instead of held by each level separately
+         */
+        public Builder<T> serverWide()
+        {
+            this.serverWide = true;
+            return this;
+        }
+
+        /**
+         * The syncing method to use when sending data to clients. Level data is sent to every player,
+         * in the level or on the server for server wide keys, so only {@link SyncedDataKey.SyncMode#NONE}
+         * and {@link SyncedDataKey.SyncMode#ALL} are supported.
+         */
+        public Builder<T> syncMode(SyncedDataKey.SyncMode mode)
+        {
+            Validate.isTrue(mode == SyncedDataKey.SyncMode.NONE || mode == SyncedDataKey.SyncMode.ALL, "Synced level data keys only support the NONE and ALL sync modes");
+            this.syncMode = mode;
+            return this;
+        }
+    }
+}
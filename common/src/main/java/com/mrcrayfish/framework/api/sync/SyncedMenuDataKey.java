@@ -0,0 +1,86 @@
+package com.mrcrayfish.framework.api.sync;
+
+import com.mrcrayfish.framework.menu.sync.SyncedMenuData;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import org.apache.commons.lang3.Validate;
+
+import java.util.function.Supplier;
+
+/**
+ * A synced data key for menus, which replaces vanilla data slots. Unlike data slots, values are not
+ * limited to shorts and can use any of the {@link Serializers}. Values are read from the sources
+ * tracked by an {@link ISyncedMenu} on the server, and only changed values are sent to the player
+ * viewing the menu, combined into a single message per tick. Keys using a {@link IDeltaDataSerializer}
+ * only send the changes of a value.
+ * <p>
+ * Author: MrCrayfish
+ */
+public record SyncedMenuDataKey<T>(ResourceLocation id, IDataSerializer<T> serializer, Supplier<T> defaultValueSupplier)
+{
+    /**
+     * Gets the value of this key from the menu. On the server this is the value of the tracked
+     * source, and on the client the value last received from the server.
+     */
+    public T getValue(AbstractContainerMenu menu)
+    {
+        return SyncedMenuData.instance().get(menu, this);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if(this == o) return true;
+        if(o == null || getClass() != o.getClass()) return false;
+        SyncedMenuDataKey<?> that = (SyncedMenuDataKey<?>) o;
+        return this.id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return this.id.hashCode();
+    }
+
+    public static <T> Builder<T> builder(IDataSerializer<T> serializer)
+    {
+        return new Builder<>(serializer);
+    }
+
+    public static class Builder<T>
+    {
+        private final IDataSerializer<T> serializer;
+        private ResourceLocation id;
+        private Supplier<T> defaultValueSupplier;
+
+        private Builder(IDataSerializer<T> serializer)
+        {
+            this.serializer = serializer;
+        }
+
+        public SyncedMenuDataKey<T> build()
+        {
+            Validate.notNull(this.id, "Missing 'id' when building synced menu data key");
+            Validate.notNull(this.defaultValueSupplier, "Missing 'defaultValueSupplier' when building synced menu data key");
+            return new SyncedMenuDataKey<>(this.id, this.serializer, this.defaultValueSupplier);
+        }
+
+        /**
+         * Sets the id for the synced key. This is a required property.
+         */
+        public Builder<T> id(ResourceLocation id)
+        {
+            this.id = id;
+            return this;
+        }
+
+        /**
+         * Sets the default value supplier for the synced key. This is a required property.
+         */
+        public Builder<T> defaultValueSupplier(Supplier<T> defaultValueSupplier)
+        {
+            this.defaultValueSupplier = defaultValueSupplier;
+            return this;
+        }
+    }
+}
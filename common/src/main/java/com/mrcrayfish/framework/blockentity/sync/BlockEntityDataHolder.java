@@ -0,0 +1,188 @@
+package com.mrcrayfish.framework.blockentity.sync;
+
+import com.mrcrayfish.framework.api.sync.ISyncedBlockEntity;
+import com.mrcrayfish.framework.api.sync.SyncedBlockEntityKey;
+import com.mrcrayfish.framework.api.sync.SyncedDataKey;
+import com.mrcrayfish.framework.network.message.play.S2CUpdateBlockEntityData;
+import com.mrcrayfish.framework.sync.ValueSlots;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import org.apache.commons.lang3.Validate;
+
+import java.util.BitSet;
+
+/**
+ * Holds the values of the synced block entity keys of a single block entity. An instance should be
+ * created in the constructor of a block entity implementing {@link ISyncedBlockEntity} and returned
+ * from {@link ISyncedBlockEntity#getSyncedDataHolder()}.
+ * <p>
+ * Author: MrCrayfish
+ */
+public final class BlockEntityDataHolder
+{
+    private static final String TAG_NAME = "FrameworkSyncedData";
+
+    private final BlockEntity blockEntity;
+    private final BlockEntityKeyLayout layout;
+    private final ValueSlots slots;
+
+    public BlockEntityDataHolder(BlockEntity blockEntity)
+    {
+        this.blockEntity = blockEntity;
+        this.layout = SyncedBlockEntityData.instance().getLayout(blockEntity.getClass());
+        this.slots = new ValueSlots(this.layout.getSerializers());
+        for(int slot = 0; slot < this.slots.size(); slot++)
+        {
+            this.slots.put(slot, this.layout.getKey(slot).defaultValueSupplier().get());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T get(SyncedBlockEntityKey<?, T> key)
+    {
+        return (T) this.slots.get(this.getSlot(key));
+    }
+
+    /**
+     * Updates the value of a key
+     *
+     * @return true if the value changed and needs to be synced to clients
+     */
+    <T> boolean set(SyncedBlockEntityKey<?, T> key, T value)
+    {
+        int slot = this.getSlot(key);
+        return this.slots.set(slot, value) && this.onChanged(slot);
+    }
+
+    /**
+     * Marks the value of a key as changed, regardless of its content
+     *
+     * @return true if the value needs to be synced to clients
+     */
+    boolean markDirty(SyncedBlockEntityKey<?, ?> key)
+    {
+        int slot = this.getSlot(key);
+        this.slots.refreshHash(slot);
+        return this.onChanged(slot);
+    }
+
+    /**
+     * Updates the value of a key with a value received from the server
+     */
+    void update(SyncedBlockEntityKey<?, ?> key, Object value)
+    {
+        int slot = this.layout.getSlot(key);
+        if(slot != -1)
+        {
+            this.slots.put(slot, value);
+        }
+    }
+
+    private boolean onChanged(int slot)
+    {
+        SyncedBlockEntityKey<?, ?> key = this.layout.getKey(slot);
+        if(key.save())
+        {
+            this.blockEntity.setChanged();
+        }
+        if(key.syncMode() == SyncedDataKey.SyncMode.NONE || this.blockEntity.getLevel() == null || this.blockEntity.getLevel().isClientSide())
+        {
+            return false;
+        }
+        this.slots.markDirty(slot);
+        return true;
+    }
+
+    private int getSlot(SyncedBlockEntityKey<?, ?> key)
+    {
+        int slot = this.layout.getSlot(key);
+        Validate.isTrue(slot != -1, "The synced block entity key %s does not apply to %s", key.id(), this.blockEntity.getClass().getName());
+        return slot;
+    }
+
+    BlockEntity getBlockEntity()
+    {
+        return this.blockEntity;
+    }
+
+    BitSet getDirtySlots()
+    {
+        return this.slots.getDirtySlots();
+    }
+
+    /**
+     * Writes the values that changed since the last call to the given message builder
+     */
+    void writeChanges(S2CUpdateBlockEntityData.Builder builder)
+    {
+        BitSet dirtySlots = this.slots.getDirtySlots();
+        builder.startBlockEntity(this.blockEntity.getBlockPos(), dirtySlots.cardinality());
+        for(int slot = dirtySlots.nextSetBit(0); slot >= 0; slot = dirtySlots.nextSetBit(slot + 1))
+        {
+            this.slots.getSerializer(slot).write(builder.startValue(this.layout.getKey(slot)), this.slots.get(slot));
+        }
+        dirtySlots.clear();
+    }
+
+    /**
+     * Writes the values of keys that should be saved. Call this from {@code saveAdditional}.
+     *
+     * @param tag the tag of the block entity
+     */
+    public void save(CompoundTag tag)
+    {
+        this.write(tag, true);
+    }
+
+    /**
+     * Writes the values of keys that are synced to clients. Call this from {@code getUpdateTag},
+     * so players receive the values along with the chunk.
+     *
+     * @param tag the update tag of the block entity
+     */
+    public void writeUpdateTag(CompoundTag tag)
+    {
+        this.write(tag, false);
+    }
+
+    private void write(CompoundTag tag, boolean save)
+    {
+        CompoundTag data = tag.getCompound(TAG_NAME);
+        for(int slot = 0; slot < this.slots.size(); slot++)
+        {
+            SyncedBlockEntityKey<?, ?> key = this.layout.getKey(slot);
+            if(save ? key.save() : key.syncMode() != SyncedDataKey.SyncMode.NONE)
+            {
+                data.put(key.id().toString(), this.slots.getSerializer(slot).write(this.slots.get(slot)));
+            }
+        }
+        if(!data.isEmpty())
+        {
+            tag.put(TAG_NAME, data);
+        }
+    }
+
+    /**
+     * Reads the values written by {@link #save(CompoundTag)} or {@link #writeUpdateTag(CompoundTag)}.
+     * Call this from {@code load}, which is also used by the default handling of update tags.
+     *
+     * @param tag the tag of the block entity
+     */
+    public void load(CompoundTag tag)
+    {
+        if(!tag.contains(TAG_NAME, Tag.TAG_COMPOUND))
+            return;
+
+        CompoundTag data = tag.getCompound(TAG_NAME);
+        for(int slot = 0; slot < this.slots.size(); slot++)
+        {
+            SyncedBlockEntityKey<?, ?> key = this.layout.getKey(slot);
+            Tag value = data.get(key.id().toString());
+            if(value != null)
+            {
+                this.slots.put(slot, key.serializer().read(value));
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.mrcrayfish.framework.blockentity.sync;
+
+import com.mrcrayfish.framework.api.sync.IDataSerializer;
+import com.mrcrayfish.framework.api.sync.SyncedBlockEntityKey;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+import java.util.List;
+
+/**
+ * A precomputed layout of every synced block entity key that applies to a concrete block entity
+ * class, which includes the keys registered to any of its superclasses. A {@link BlockEntityDataHolder}
+ * stores its values in a dense array and uses the layout to resolve a key into a slot of that array.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class BlockEntityKeyLayout
+{
+    static final BlockEntityKeyLayout EMPTY = new BlockEntityKeyLayout(List.of());
+
+    private final SyncedBlockEntityKey<?, ?>[] keys;
+    private final IDataSerializer<?>[] serializers;
+    private final Reference2IntMap<SyncedBlockEntityKey<?, ?>> slots = new Reference2IntOpenHashMap<>();
+
+    BlockEntityKeyLayout(List<SyncedBlockEntityKey<?, ?>> keys)
+    {
+        this.keys = keys.toArray(new SyncedBlockEntityKey<?, ?>[0]);
+        this.serializers = new IDataSerializer<?>[this.keys.length];
+        this.slots.defaultReturnValue(-1);
+        for(int slot = 0; slot < this.keys.length; slot++)
+        {
+            this.slots.put(this.keys[slot], slot);
+            this.serializers[slot] = this.keys[slot].serializer();
+        }
+    }
+
+    int size()
+    {
+        return this.keys.length;
+    }
+
+    SyncedBlockEntityKey<?, ?> getKey(int slot)
+    {
+        return this.keys[slot];
+    }
+
+    /**
+     * @return the serializer of the key in each slot, shared by every holder using this layout
+     */
+    IDataSerializer<?>[] getSerializers()
+    {
+        return this.serializers;
+    }
+
+    /**
+     * @param key a synced block entity key
+     * @return the slot of the key or -1 if the key does not apply to this layout
+     */
+    int getSlot(SyncedBlockEntityKey<?, ?> key)
+    {
+        return this.slots.getInt(key);
+    }
+}
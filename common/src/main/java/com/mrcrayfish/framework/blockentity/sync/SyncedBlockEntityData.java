@@ -0,0 +1,242 @@
+package com.mrcrayfish.framework.blockentity.sync;
+
+import com.mrcrayfish.framework.Constants;
+import com.mrcrayfish.framework.FrameworkData;
+import com.mrcrayfish.framework.api.event.TickEvents;
+import com.mrcrayfish.framework.api.sync.ISyncedBlockEntity;
+import com.mrcrayfish.framework.api.sync.SyncedBlockEntityKey;
+import com.mrcrayfish.framework.network.Network;
+import com.mrcrayfish.framework.network.message.play.S2CUpdateBlockEntityData;
+import com.mrcrayfish.framework.sync.KeyHashes;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceMap;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Manages synced block entity keys. Block entities with changed values are collected per level and
+ * chunk during the tick, then at the end of the server tick the changes of each chunk are combined
+ * into a single {@link S2CUpdateBlockEntityData} message, sent to the players watching that chunk.
+ * <p>
+ * Author: MrCrayfish
+ */
+public final class SyncedBlockEntityData
+{
+    private static final Marker SYNCED_BLOCK_ENTITY_DATA_MARKER = MarkerFactory.getMarker("SYNCED_BLOCK_ENTITY_DATA");
+    private static SyncedBlockEntityData instance;
+
+    private final Object2ObjectMap<ResourceLocation, SyncedBlockEntityKey<?, ?>> registeredKeys = new Object2ObjectLinkedOpenHashMap<>();
+    private final Long2ReferenceMap<SyncedBlockEntityKey<?, ?>> keysByHash = new Long2ReferenceOpenHashMap<>();
+    private volatile ClassValue<BlockEntityKeyLayout> classLayouts = this.createLayoutCache();
+    private final Reference2ObjectMap<ServerLevel, Long2ObjectMap<ReferenceLinkedOpenHashSet<BlockEntityDataHolder>>> dirtyChunks = new Reference2ObjectLinkedOpenHashMap<>();
+
+    private SyncedBlockEntityData()
+    {
+        TickEvents.END_SERVER.register(this::onServerTickEnd);
+    }
+
+    public static SyncedBlockEntityData instance()
+    {
+        if(instance == null)
+        {
+            instance = new SyncedBlockEntityData();
+        }
+        return instance;
+    }
+
+    /**
+     * Registers a synced block entity key into the system.
+     *
+     * @param key a synced block entity key instance
+     */
+    public synchronized <B extends BlockEntity, T> void registerKey(SyncedBlockEntityKey<B, T> key)
+    {
+        if(FrameworkData.isLoaded())
+        {
+            throw new IllegalStateException(String.format("Tried to register synced block entity key %s after game initialization", key.id()));
+        }
+        if(this.registeredKeys.containsKey(key.id()))
+        {
+            throw new IllegalArgumentException(String.format("The synced block entity key %s is already registered", key.id()));
+        }
+        this.registeredKeys.put(key.id(), key);
+        this.keysByHash.put(getKeyHash(key), key);
+        this.classLayouts = this.createLayoutCache(); // Layouts are no longer valid
+        Constants.LOG.info(SYNCED_BLOCK_ENTITY_DATA_MARKER, "Registered synced block entity key {} for {}", key.id(), key.blockEntityClass().getName());
+    }
+
+    public <B extends BlockEntity, T> void set(B blockEntity, SyncedBlockEntityKey<B, T> key, T value)
+    {
+        BlockEntityDataHolder holder = this.getDataHolder(blockEntity, key);
+        if(holder.set(key, value))
+        {
+            this.queue(holder);
+        }
+    }
+
+    public <B extends BlockEntity, T> T get(B blockEntity, SyncedBlockEntityKey<B, T> key)
+    {
+        return this.getDataHolder(blockEntity, key).get(key);
+    }
+
+    public <B extends BlockEntity> void markDirty(B blockEntity, SyncedBlockEntityKey<B, ?> key)
+    {
+        BlockEntityDataHolder holder = this.getDataHolder(blockEntity, key);
+        if(holder.markDirty(key))
+        {
+            this.queue(holder);
+        }
+    }
+
+    private BlockEntityDataHolder getDataHolder(BlockEntity blockEntity, SyncedBlockEntityKey<?, ?> key)
+    {
+        if(!this.registeredKeys.containsKey(key.id()))
+        {
+            throw new IllegalArgumentException(String.format("The synced block entity key %s is not registered", key.id()));
+        }
+        return ((ISyncedBlockEntity) blockEntity).getSyncedDataHolder();
+    }
+
+    private void queue(BlockEntityDataHolder holder)
+    {
+        BlockEntity blockEntity = holder.getBlockEntity();
+        if(blockEntity.getLevel() instanceof ServerLevel level)
+        {
+            long chunk = ChunkPos.asLong(blockEntity.getBlockPos());
+            this.dirtyChunks.computeIfAbsent(level, l -> new Long2ObjectLinkedOpenHashMap<>()).computeIfAbsent(chunk, c -> new ReferenceLinkedOpenHashSet<>()).add(holder);
+        }
+    }
+
+    private void onServerTickEnd(MinecraftServer server)
+    {
+        if(this.dirtyChunks.isEmpty())
+            return;
+
+        this.dirtyChunks.forEach((level, chunks) -> {
+            chunks.forEach((chunk, holders) -> {
+                // Nobody can be tracking a chunk that is no longer loaded, so the changes are dropped
+                LevelChunk levelChunk = level.getChunkSource().getChunkNow(ChunkPos.getX(chunk), ChunkPos.getZ(chunk));
+                if(levelChunk == null)
+                {
+                    holders.forEach(holder -> holder.getDirtySlots().clear());
+                    return;
+                }
+                for(S2CUpdateBlockEntityData message : this.createMessages(holders))
+                {
+                    Network.getPlayChannel().sendToTrackingChunk(() -> levelChunk, message);
+                }
+            });
+        });
+        this.dirtyChunks.clear();
+    }
+
+    /**
+     * Encodes the changed values of the given block entities. Usually a single message is created,
+     * but the changes are split into multiple messages if they exceed {@link S2CUpdateBlockEntityData#MAX_SIZE}.
+     */
+    private List<S2CUpdateBlockEntityData> createMessages(ReferenceLinkedOpenHashSet<BlockEntityDataHolder> holders)
+    {
+        List<S2CUpdateBlockEntityData> messages = new ArrayList<>(1);
+        S2CUpdateBlockEntityData.Builder builder = new S2CUpdateBlockEntityData.Builder();
+        for(BlockEntityDataHolder holder : holders)
+        {
+            if(holder.getBlockEntity().isRemoved())
+            {
+                holder.getDirtySlots().clear();
+                continue;
+            }
+            holder.writeChanges(builder);
+            if(builder.isFull())
+            {
+                messages.add(builder.build());
+                builder = new S2CUpdateBlockEntityData.Builder();
+            }
+        }
+        if(!builder.isEmpty())
+        {
+            messages.add(builder.build());
+        }
+        return messages;
+    }
+
+    /**
+     * Applies a value received from the server to the block entity at the given position
+     *
+     * @param level the client level
+     * @param pos   the position of the block entity
+     * @param key   the synced block entity key
+     * @param value the received value
+     */
+    public void updateClientEntry(Level level, BlockPos pos, SyncedBlockEntityKey<?, ?> key, Object value)
+    {
+        BlockEntity blockEntity = level.getBlockEntity(pos);
+        if(blockEntity instanceof ISyncedBlockEntity synced && key.blockEntityClass().isInstance(blockEntity))
+        {
+            synced.getSyncedDataHolder().update(key, value);
+        }
+    }
+
+    @Nullable
+    public SyncedBlockEntityKey<?, ?> getKeyByHash(long hash)
+    {
+        return this.keysByHash.get(hash);
+    }
+
+    BlockEntityKeyLayout getLayout(Class<?> blockEntityClass)
+    {
+        return this.classLayouts.get(blockEntityClass);
+    }
+
+    private ClassValue<BlockEntityKeyLayout> createLayoutCache()
+    {
+        return new ClassValue<>()
+        {
+            @Override
+            protected BlockEntityKeyLayout computeValue(Class<?> type)
+            {
+                return SyncedBlockEntityData.this.createLayout(type);
+            }
+        };
+    }
+
+    private synchronized BlockEntityKeyLayout createLayout(Class<?> type)
+    {
+        List<SyncedBlockEntityKey<?, ?>> keys = new ArrayList<>();
+        for(SyncedBlockEntityKey<?, ?> key : this.registeredKeys.values())
+        {
+            if(key.blockEntityClass().isAssignableFrom(type))
+            {
+                keys.add(key);
+            }
+        }
+        return keys.isEmpty() ? BlockEntityKeyLayout.EMPTY : new BlockEntityKeyLayout(keys);
+    }
+
+    /**
+     * @return a hash of the id of the key, used to identify keys over the network. Block entity keys
+     * are static, so unlike entity keys they don't need an id mapping handshake.
+     */
+    public static long getKeyHash(SyncedBlockEntityKey<?, ?> key)
+    {
+        return KeyHashes.hash("block_entity", key.id());
+    }
+}
@@ -2,14 +2,22 @@ package com.mrcrayfish.framework.client.multiplayer;
 
 import com.mrcrayfish.framework.Constants;
 import com.mrcrayfish.framework.api.network.MessageContext;
+import com.mrcrayfish.framework.blockentity.sync.SyncedBlockEntityData;
 import com.mrcrayfish.framework.config.FrameworkConfigManager;
 import com.mrcrayfish.framework.entity.sync.DataEntry;
 import com.mrcrayfish.framework.entity.sync.SyncedEntityData;
+import com.mrcrayfish.framework.level.sync.SyncedLevelData;
+import com.mrcrayfish.framework.menu.sync.SyncedMenuData;
+import com.mrcrayfish.framework.network.message.play.S2CRestorePlayerData;
 import com.mrcrayfish.framework.network.message.play.S2CSyncConfigData;
+import com.mrcrayfish.framework.network.message.play.S2CUpdateBlockEntityData;
 import com.mrcrayfish.framework.network.message.play.S2CUpdateEntityData;
+import com.mrcrayfish.framework.network.message.play.S2CUpdateLevelData;
+import com.mrcrayfish.framework.network.message.play.S2CUpdateMenuData;
 import net.minecraft.client.Minecraft;
 import net.minecraft.network.chat.Component;
 import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.level.Level;
 
 import java.util.List;
@@ -31,6 +39,42 @@ public final class ClientPlayHandler
 
         List<DataEntry<?, ?>> entries = message.getEntries();
         entries.forEach(entry -> SyncedEntityData.instance().updateClientEntry(entity, entry));
+        if(entity == Minecraft.getInstance().player)
+        {
+            SyncedEntityData.instance().updateLocalPlayer((Player) entity);
+        }
+    }
+
+    public static void handleRestorePlayerData(S2CRestorePlayerData message)
+    {
+        Player player = Minecraft.getInstance().player;
+        if(player == null || player.getId() != message.getEntityId())
+            return;
+
+        SyncedEntityData.instance().restoreLocalPlayerData(player);
+    }
+
+    public static void handleUpdateBlockEntityData(S2CUpdateBlockEntityData message)
+    {
+        Level level = Minecraft.getInstance().level;
+        if(level == null)
+            return;
+
+        message.getEntries().forEach(entry -> SyncedBlockEntityData.instance().updateClientEntry(level, entry.pos(), entry.key(), entry.value()));
+    }
+
+    public static void handleUpdateLevelData(S2CUpdateLevelData message)
+    {
+        SyncedLevelData.instance().handleUpdateLevelData(message);
+    }
+
+    public static void handleUpdateMenuData(S2CUpdateMenuData message)
+    {
+        Player player = Minecraft.getInstance().player;
+        if(player == null)
+            return;
+
+        SyncedMenuData.instance().handleUpdateMenuData(player, message);
     }
 
     public static void handleSyncConfigData(MessageContext context, S2CSyncConfigData message)
@@ -1,24 +1,62 @@
 package com.mrcrayfish.framework.entity.sync;
 
+import com.mrcrayfish.framework.api.sync.IDataSerializer;
+import com.mrcrayfish.framework.api.sync.IDeltaDataSerializer;
+import com.mrcrayfish.framework.api.sync.IPrimitiveDataSerializer;
 import com.mrcrayfish.framework.api.sync.SyncedDataKey;
+import com.mrcrayfish.framework.sync.ValueSlots;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.objects.ObjectArraySet;
 import net.minecraft.nbt.Tag;
 import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.Entity;
 import org.apache.commons.lang3.Validate;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
 /**
  * Author: MrCrayfish
  */
 public class DataEntry<E extends Entity, T>
 {
     private final SyncedDataKey<E, T> key;
-    private T value;
-    private boolean dirty;
+    @Nullable
+    private final IPrimitiveDataSerializer<T> primitive;
+    @Nullable
+    private final IDeltaDataSerializer<T> delta;
+    private volatile T value; // Volatile so values can be read from worker threads
+    private int valueHash;
+    private int defaultHash;
+    private volatile long bits;
+    private int nextSyncTick;
+    private long version;
+    @Nullable
+    private T lastSent;
+    @Nullable
+    private byte[] receivedDelta;
+    @Nullable
+    private Set<UUID> aheadViewers;
 
     DataEntry(SyncedDataKey<E, T> key)
     {
         this.key = key;
-        this.value = key.defaultValueSupplier().get();
+        this.primitive = key.serializer() instanceof IPrimitiveDataSerializer<T> serializer ? serializer : null;
+        this.delta = key.serializer() instanceof IDeltaDataSerializer<T> serializer ? serializer : null;
+        if(this.primitive != null)
+        {
+            this.bits = this.primitive.toBits(key.defaultValueSupplier().get());
+        }
+        else
+        {
+            this.value = key.defaultValueSupplier().get();
+            this.valueHash = key.serializer().contentHash(this.value);
+            this.defaultHash = this.valueHash;
+        }
     }
 
     SyncedDataKey<E, T> getKey()
@@ -26,32 +64,327 @@ public class DataEntry<E extends Entity, T>
         return this.key;
     }
 
+    /**
+     * @return true if the value of this entry is stored as primitive bits
+     */
+    boolean isPrimitive()
+    {
+        return this.primitive != null;
+    }
+
     T getValue()
     {
-        return this.value;
+        return this.primitive != null ? this.primitive.fromBits(this.bits) : this.value;
     }
 
-    void setValue(T value, boolean dirty)
+    /**
+     * Updates the value of this entry
+     *
+     * @param value the new value
+     * @return true if the value changed
+     */
+    boolean setValue(T value)
     {
+        if(this.primitive != null)
+        {
+            return this.setBits(this.primitive.toBits(value));
+        }
+        IDataSerializer<T> serializer = this.key.serializer();
+        int hash = serializer.contentHash(value);
+        boolean changed = ValueSlots.hasChanged(serializer, this.value, this.valueHash, value, hash);
         this.value = value;
-        this.dirty = dirty;
+        this.valueHash = hash;
+        return changed;
     }
 
-    boolean isDirty()
+    /**
+     * Updates the content hash of the value of this entry. Used to detect changes that were made to
+     * a mutable value in place.
+     *
+     * @return true if the content hash changed
+     */
+    boolean updateHash()
     {
-        return this.dirty;
+        if(this.primitive != null)
+            return false;
+
+        int hash = this.key.serializer().contentHash(this.value);
+        if(this.valueHash == hash)
+            return false;
+
+        this.valueHash = hash;
+        return true;
     }
 
-    void clean()
+    /**
+     * @return true if the value of this entry is equal to the default value of the key
+     */
+    boolean isDefault()
     {
-        this.dirty = false;
+        if(this.primitive != null)
+        {
+            return this.bits == SyncedEntityData.instance().getDefaultBits(this.key);
+        }
+        // The content hash is consistent with content equality, so most values are ruled out without comparing
+        if(this.valueHash != this.defaultHash)
+            return false;
+        return this.key.serializer().contentEquals(this.value, SyncedEntityData.instance().getDefaultValue(this.key));
+    }
+
+    long getBits()
+    {
+        Validate.validState(this.primitive != null, "Synced data key %s does not use a primitive serializer", this.key.id());
+        return this.bits;
+    }
+
+    /**
+     * Updates the primitive bits of this entry
+     *
+     * @param bits the new bits
+     * @return true if the bits changed
+     */
+    boolean setBits(long bits)
+    {
+        Validate.validState(this.primitive != null, "Synced data key %s does not use a primitive serializer", this.key.id());
+        if(this.bits == bits)
+        {
+            return false;
+        }
+        this.bits = bits;
+        return true;
     }
 
     public void write(FriendlyByteBuf buffer)
+    {
+        this.write(buffer, false);
+    }
+
+    /**
+     * Writes this entry to the given buffer. If the key uses a delta serializer, a delta against the
+     * value last sent to clients can be written instead of the full value.
+     *
+     * @param buffer the buffer to write to
+     * @param delta  if true, a delta will be written if a previous value has been sent
+     */
+    public void write(FriendlyByteBuf buffer, boolean delta)
     {
         int id = SyncedEntityData.instance().getInternalId(this.key);
         buffer.writeVarInt(id);
-        this.key.serializer().write(buffer, this.value);
+        if(this.primitive != null)
+        {
+            this.primitive.writeBits(buffer, this.bits);
+        }
+        else if(this.delta != null)
+        {
+            boolean useDelta = delta && this.lastSent != null;
+            buffer.writeBoolean(useDelta);
+            if(useDelta)
+            {
+                FriendlyByteBuf deltaBuffer = new FriendlyByteBuf(Unpooled.buffer());
+                this.delta.writeDelta(deltaBuffer, this.lastSent, this.value);
+                buffer.writeVarInt(deltaBuffer.readableBytes());
+                buffer.writeBytes(deltaBuffer);
+            }
+            else
+            {
+                this.delta.write(buffer, this.value);
+            }
+        }
+        else
+        {
+            this.key.serializer().write(buffer, this.value);
+        }
+    }
+
+    /**
+     * @return the version of the value of this entry, which changes every time the value changes on
+     * the server. Zero if the value has never changed.
+     */
+    long getVersion()
+    {
+        return this.version;
+    }
+
+    void setVersion(long version)
+    {
+        this.version = version;
+    }
+
+    /**
+     * @param tick the current server tick
+     * @return true if the minimum sync interval of the key has passed since this entry was last sent
+     */
+    boolean canSync(int tick)
+    {
+        return tick >= this.nextSyncTick;
+    }
+
+    void scheduleNextSync(int tick)
+    {
+        this.nextSyncTick = tick + this.key.syncRate().interval();
+    }
+
+    /**
+     * Marks the current value as the value last sent to clients. Deltas are written against this
+     * value, so it must be called after every value of this entry sent by a dirty update.
+     */
+    void markSent()
+    {
+        if(this.delta != null)
+        {
+            this.lastSent = this.delta.copy(this.value);
+            this.aheadViewers = null;
+        }
+    }
+
+    /**
+     * Records that the full value of this entry was sent to a viewer outside of a dirty update, for
+     * example in a snapshot. If the value changed since it was last sent, while the key is held back
+     * by its sync interval, the viewer no longer holds the value deltas are written against. That
+     * viewer receives full values until this entry is marked as sent again.
+     *
+     * @param viewer the player that was sent the full value
+     */
+    void markSentFull(ServerPlayer viewer)
+    {
+        if(!this.hasPendingDelta())
+            return;
+
+        if(this.aheadViewers == null)
+        {
+            this.aheadViewers = new ObjectArraySet<>();
+        }
+        this.aheadViewers.add(viewer.getUUID());
+    }
+
+    /**
+     * @return true if the value changed since it was last sent, so the next dirty update of this
+     * entry will write a delta against a value that players receiving the full value don't hold
+     */
+    boolean hasPendingDelta()
+    {
+        return this.delta != null && this.lastSent != null && !this.delta.contentEquals(this.lastSent, this.value);
+    }
+
+    /**
+     * @param viewer a player receiving updates of this entry
+     * @return true if the player holds the value last sent, so a delta can be written for them
+     */
+    boolean hasBaseline(ServerPlayer viewer)
+    {
+        return this.aheadViewers == null || !this.aheadViewers.contains(viewer.getUUID());
+    }
+
+    /**
+     * @return true if this entry was read from a buffer and contains a delta instead of a value
+     */
+    boolean isDelta()
+    {
+        return this.receivedDelta != null;
+    }
+
+    /**
+     * Applies the delta received by this entry to the value currently held by the client
+     *
+     * @param previous the value currently held by the client
+     * @return a new value with the delta applied
+     */
+    T applyDelta(T previous)
+    {
+        Validate.validState(this.delta != null && this.receivedDelta != null, "Synced data entry %s does not contain a delta", this.key.id());
+        return this.delta.readDelta(new FriendlyByteBuf(Unpooled.wrappedBuffer(this.receivedDelta)), previous);
+    }
+
+    /**
+     * @return true if this entry uses a boolean primitive serializer and can be packed into a bitfield
+     */
+    boolean isBoolean()
+    {
+        return this.primitive instanceof IPrimitiveDataSerializer.OfBoolean;
+    }
+
+    /**
+     * Writes the given entries to the buffer. The values of boolean entries are packed together
+     * into a single bitfield after the other entries, so each only takes a single bit rather than
+     * a byte.
+     *
+     * @param buffer  the buffer to write to
+     * @param entries the entries to write
+     * @param delta   if true, entries using a delta serializer will write a delta if possible
+     */
+    public static void writeEntries(FriendlyByteBuf buffer, List<DataEntry<?, ?>> entries, boolean delta)
+    {
+        int booleans = 0;
+        for(DataEntry<?, ?> entry : entries)
+        {
+            if(entry.isBoolean())
+            {
+                booleans++;
+            }
+        }
+        buffer.writeVarInt(entries.size() - booleans);
+        for(DataEntry<?, ?> entry : entries)
+        {
+            if(!entry.isBoolean())
+            {
+                entry.write(buffer, delta);
+            }
+        }
+        buffer.writeVarInt(booleans);
+        if(booleans == 0)
+            return;
+
+        byte[] bitfield = new byte[(booleans + 7) >> 3];
+        int index = 0;
+        for(DataEntry<?, ?> entry : entries)
+        {
+            if(entry.isBoolean())
+            {
+                buffer.writeVarInt(SyncedEntityData.instance().getInternalId(entry.key));
+                if(entry.bits != 0)
+                {
+                    bitfield[index >> 3] |= (byte) (1 << (index & 7));
+                }
+                index++;
+            }
+        }
+        buffer.writeBytes(bitfield);
+    }
+
+    /**
+     * Reads entries written by {@link #writeEntries(FriendlyByteBuf, List, boolean)}
+     *
+     * @param buffer the buffer to read from
+     * @return a list of the read entries
+     */
+    public static List<DataEntry<?, ?>> readEntries(FriendlyByteBuf buffer)
+    {
+        int size = buffer.readVarInt();
+        List<DataEntry<?, ?>> entries = new ArrayList<>(size);
+        for(int i = 0; i < size; i++)
+        {
+            entries.add(read(buffer));
+        }
+        int booleans = buffer.readVarInt();
+        if(booleans == 0)
+            return entries;
+
+        int start = entries.size();
+        for(int i = 0; i < booleans; i++)
+        {
+            SyncedDataKey<?, ?> key = SyncedEntityData.instance().getKey(buffer.readVarInt());
+            Validate.notNull(key, "Synced key does not exist for id");
+            DataEntry<?, ?> entry = new DataEntry<>(key);
+            Validate.validState(entry.isBoolean(), "Synced data key %s does not use a boolean serializer", key.id());
+            entries.add(entry);
+        }
+        byte[] bitfield = new byte[(booleans + 7) >> 3];
+        buffer.readBytes(bitfield);
+        for(int i = 0; i < booleans; i++)
+        {
+            entries.get(start + i).bits = (bitfield[i >> 3] >> (i & 7)) & 1;
+        }
+        return entries;
     }
 
     public static DataEntry<?, ?> read(FriendlyByteBuf buffer)
@@ -65,16 +398,36 @@ public class DataEntry<E extends Entity, T>
 
     private void readValue(FriendlyByteBuf buffer)
     {
-        this.value = this.getKey().serializer().read(buffer);
+        if(this.primitive != null)
+        {
+            this.bits = this.primitive.readBits(buffer);
+        }
+        else if(this.delta != null && buffer.readBoolean())
+        {
+            // The delta can only be applied on the main thread, where the previous value is known
+            this.receivedDelta = buffer.readByteArray();
+        }
+        else
+        {
+            this.value = this.getKey().serializer().read(buffer);
+        }
     }
 
     Tag writeValue()
     {
-        return this.key.serializer().write(this.value);
+        return this.primitive != null ? this.primitive.writeBits(this.bits) : this.key.serializer().write(this.value);
     }
 
     void readValue(Tag nbt)
     {
-        this.value = this.key.serializer().read(nbt);
+        if(this.primitive != null)
+        {
+            this.bits = this.primitive.readBits(nbt);
+        }
+        else
+        {
+            this.value = this.key.serializer().read(nbt);
+            this.valueHash = this.key.serializer().contentHash(this.value);
+        }
     }
 }
@@ -2,35 +2,49 @@ package com.mrcrayfish.framework.entity.sync;
 
 import com.mrcrayfish.framework.api.sync.SyncedClassKey;
 import com.mrcrayfish.framework.api.sync.SyncedDataKey;
+import it.unimi.dsi.fastutil.ints.Int2LongMap;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.StringTag;
 import net.minecraft.nbt.Tag;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.entity.Entity;
 
 import javax.annotation.Nullable;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Author: MrCrayfish
  */
 public class DataHolder
 {
-    Map<SyncedDataKey<?, ?>, DataEntry<?, ?>> dataMap = new HashMap<>();
-    private boolean dirty = false;
+    private static final DataEntry<?, ?>[] NO_ENTRIES = new DataEntry<?, ?>[0];
+    private static final byte INDEXED_VALUES_FORMAT = 1;
+    private static final byte COMPACT_FORMAT = 2;
+
+    private final Class<? extends Entity> entityClass;
+    private final SyncedKeyLayout layout;
+    private volatile DataEntry<?, ?>[] entries = NO_ENTRIES; // Allocated on the first write
+    private final BitSet dirtySlots = new BitSet();
+
+    public DataHolder(Class<? extends Entity> entityClass)
+    {
+        this.entityClass = entityClass;
+        this.layout = SyncedEntityData.instance().getLayout(entityClass);
+    }
 
     @SuppressWarnings("unchecked")
     <E extends Entity, T> boolean set(E entity, SyncedDataKey<?, ?> key, T value)
     {
-        DataEntry<E, T> entry = (DataEntry<E, T>) this.dataMap.computeIfAbsent(key, DataEntry::new);
-        if(!entry.getValue().equals(value))
+        int slot = this.getSlot(key);
+        DataEntry<E, T> entry = (DataEntry<E, T>) this.getOrCreateEntry(slot);
+        if(entry.setValue(value))
         {
-            boolean dirty = !entity.level().isClientSide() && entry.getKey().syncMode() != SyncedDataKey.SyncMode.NONE;
-            entry.setValue(value, dirty);
-            this.dirty = dirty;
+            this.markDirty(entity, slot, entry);
+            this.updateIndex(entity, entry);
             return true;
         }
         return false;
@@ -40,72 +54,395 @@ public class DataHolder
     @SuppressWarnings("unchecked")
     <E extends Entity, T> T get(SyncedDataKey<E, T> key)
     {
-        return (T) this.dataMap.computeIfAbsent(key, DataEntry::new).getValue();
+        // Reading a key that was never written doesn't create an entry
+        DataEntry<?, ?> entry = this.getEntry(this.getSlot(key));
+        return entry != null ? (T) entry.getValue() : key.defaultValueSupplier().get();
     }
 
-    boolean isDirty()
+    /**
+     * Sets the raw bits of a key using a primitive serializer. This avoids boxing the value.
+     */
+    boolean setBits(Entity entity, SyncedDataKey<?, ?> key, long bits)
+    {
+        int slot = this.getSlot(key);
+        if(this.getEntry(slot) == null && this.layout.getDefaultBits(slot) == bits)
+            return false;
+
+        DataEntry<?, ?> entry = this.getOrCreateEntry(slot);
+        if(entry.setBits(bits))
+        {
+            this.markDirty(entity, slot, entry);
+            this.updateIndex(entity, entry);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the raw bits of a key using a primitive serializer. This avoids boxing the value.
+     */
+    long getBits(SyncedDataKey<?, ?> key)
+    {
+        int slot = this.getSlot(key);
+        DataEntry<?, ?> entry = this.getEntry(slot);
+        return entry != null ? entry.getBits() : this.layout.getDefaultBits(slot);
+    }
+
+    /**
+     * Marks a key as dirty after its value was changed in place. Nothing is marked if the value has
+     * never been set, since only set values are held by this holder.
+     */
+    boolean markDirty(Entity entity, SyncedDataKey<?, ?> key)
+    {
+        int slot = this.getSlot(key);
+        DataEntry<?, ?> entry = this.getEntry(slot);
+        if(entry == null)
+            return false;
+
+        entry.updateHash();
+        this.markDirty(entity, slot, entry);
+        this.updateIndex(entity, entry);
+        return true;
+    }
+
+    private void updateIndex(Entity entity, DataEntry<?, ?> entry)
+    {
+        if(entry.getKey().indexed())
+        {
+            SyncedEntityData.instance().updateIndex(entity, entry);
+        }
+    }
+
+    private void markDirty(Entity entity, int slot, DataEntry<?, ?> entry)
+    {
+        if(entity.level().isClientSide())
+            return;
+
+        entry.setVersion(SyncedEntityData.instance().nextVersion());
+        if(entry.getKey().syncMode() != SyncedDataKey.SyncMode.NONE)
+        {
+            this.dirtySlots.set(slot);
+        }
+    }
+
+    /**
+     * @return the slot of the key in the layout of this holder
+     * @throws IllegalArgumentException if the key does not apply to the entity of this holder
+     */
+    int getSlot(SyncedDataKey<?, ?> key)
+    {
+        return this.layout.getSlot(key, this.entityClass);
+    }
+
+    @Nullable
+    DataEntry<?, ?> getEntry(int slot)
+    {
+        DataEntry<?, ?>[] entries = this.entries;
+        return slot < entries.length ? entries[slot] : null;
+    }
+
+    private DataEntry<?, ?> getOrCreateEntry(int slot)
+    {
+        DataEntry<?, ?> entry = this.getEntry(slot);
+        if(entry == null)
+        {
+            entry = new DataEntry<>(this.layout.getKey(slot));
+            this.putEntry(slot, entry);
+        }
+        return entry;
+    }
+
+    private void putEntry(int slot, DataEntry<?, ?> entry)
+    {
+        DataEntry<?, ?>[] entries = this.entries.length == 0 ? new DataEntry<?, ?>[this.layout.size()] : this.entries;
+        entries[slot] = entry;
+        this.entries = entries; // Publishes the new entry to worker threads reading this holder
+    }
+
+    SyncedKeyLayout getLayout()
     {
-        return this.dirty;
+        return this.layout;
     }
 
-    void clean()
+    /**
+     * @return the amount of slots in the layout of this holder
+     */
+    int size()
     {
-        this.dirty = false;
-        this.dataMap.forEach((key, entry) -> entry.clean());
+        return this.layout.size();
     }
 
-    List<DataEntry<?, ?>> gatherDirty()
+    boolean isDirty()
     {
-        return this.dataMap.values().stream().filter(DataEntry::isDirty).filter(entry -> entry.getKey().syncMode() != SyncedDataKey.SyncMode.NONE).collect(Collectors.toList());
+        return !this.dirtySlots.isEmpty();
+    }
+
+    /**
+     * Gathers the entries that have changed since they were last gathered. Only the slots marked in
+     * the dirty bitset are visited, so the cost scales with the number of changed keys. Entries of
+     * keys that were synced within their minimum sync interval stay dirty until the interval passes.
+     *
+     * @param tick the current server tick
+     */
+    List<DataEntry<?, ?>> gatherDirty(int tick)
+    {
+        List<DataEntry<?, ?>> list = new ArrayList<>(this.dirtySlots.cardinality());
+        for(int slot = this.dirtySlots.nextSetBit(0); slot >= 0; slot = this.dirtySlots.nextSetBit(slot + 1))
+        {
+            DataEntry<?, ?> entry = this.entries[slot];
+            if(entry == null)
+            {
+                this.dirtySlots.clear(slot);
+                continue;
+            }
+            if(entry.canSync(tick))
+            {
+                entry.scheduleNextSync(tick);
+                this.dirtySlots.clear(slot);
+                list.add(entry);
+            }
+        }
+        return list;
     }
 
     List<DataEntry<?, ?>> gatherAll()
     {
-        return this.dataMap.values().stream().filter(entry -> entry.getKey().syncMode() != SyncedDataKey.SyncMode.NONE).collect(Collectors.toList());
+        List<DataEntry<?, ?>> list = new ArrayList<>();
+        for(DataEntry<?, ?> entry : this.entries)
+        {
+            // Clients start with the default values, so they don't need to be sent. Unless a delta
+            // is pending against another value, so the receiver must be marked as sent in full.
+            if(entry != null && entry.getKey().syncMode() != SyncedDataKey.SyncMode.NONE && (!entry.isDefault() || entry.hasPendingDelta()))
+            {
+                list.add(entry);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Gathers the entries that have changed since their values were last sent to a client, which
+     * still holds those values. Entries that no longer exist are gathered with their default value.
+     *
+     * @param sentVersions the internal ids of the keys mapped to the versions last sent to the client
+     */
+    List<DataEntry<?, ?>> gatherChanged(Int2LongMap sentVersions)
+    {
+        List<DataEntry<?, ?>> list = new ArrayList<>();
+        for(int slot = 0; slot < this.layout.size(); slot++)
+        {
+            SyncedDataKey<?, ?> key = this.layout.getKey(slot);
+            if(key.syncMode() == SyncedDataKey.SyncMode.NONE || key.syncMode().isOnDemand())
+                continue;
+
+            DataEntry<?, ?> entry = this.getEntry(slot);
+            int id = SyncedEntityData.instance().getInternalId(key);
+            if(!sentVersions.containsKey(id))
+            {
+                // The client has never received the key, so it holds the default value
+                if(entry != null && !entry.isDefault())
+                {
+                    list.add(entry);
+                }
+            }
+            else if(entry == null)
+            {
+                if(sentVersions.get(id) != 0)
+                {
+                    list.add(new DataEntry<>(key));
+                }
+            }
+            else if(entry.getVersion() != sentVersions.get(id))
+            {
+                list.add(entry);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Copies the entries from another holder into this holder. Used when a player is cloned.
+     *
+     * @param other   the holder to copy the entries from
+     * @param respawn if true, entries of keys that are not persistent will not be copied
+     */
+    void copyFrom(DataHolder other, boolean respawn)
+    {
+        this.entries = NO_ENTRIES;
+        this.dirtySlots.clear();
+        for(DataEntry<?, ?> entry : other.entries)
+        {
+            if(entry == null || (respawn && !entry.getKey().persistent()))
+                continue;
+
+            int slot = this.layout.getSlot(SyncedEntityData.instance().getInternalId(entry.getKey()));
+            if(slot != -1)
+            {
+                this.putEntry(slot, entry);
+            }
+        }
     }
 
+    /**
+     * Serializes the saved entries of this holder. The entries are written into a single compound
+     * using a compact format. The saved keys are listed once in a palette, the bits of primitive
+     * keys are stored in a long array, and the remaining values are stored in a list following the
+     * bits in palette order. Values can be of any tag type, so each is wrapped in a compound.
+     * The list wrapper is kept for compatibility with the original format, which is still read by
+     * {@link #deserialize(ListTag)}.
+     */
     public ListTag serialize()
     {
-        ListTag list = new ListTag();
-        this.dataMap.forEach((key, entry) ->
+        List<DataEntry<?, ?>> primitives = new ArrayList<>();
+        List<DataEntry<?, ?>> objects = new ArrayList<>();
+        for(DataEntry<?, ?> entry : this.entries)
         {
-            if(key.save())
+            if(entry == null)
+                continue;
+
+            // Default values are restored by the supplier, so there is no need to save them
+            if(entry.getKey().save() && !entry.isDefault())
             {
-                CompoundTag keyTag = new CompoundTag();
-                keyTag.putString("ClassKey", key.classKey().id().toString());
-                keyTag.putString("DataKey", key.id().toString());
-                keyTag.put("Value", entry.writeValue());
-                list.add(keyTag);
+                (entry.isPrimitive() ? primitives : objects).add(entry);
             }
-        });
+        }
+
+        ListTag list = new ListTag();
+        if(primitives.isEmpty() && objects.isEmpty())
+            return list;
+
+        // Primitive keys are placed first in the palette, so the index of their bits matches their palette index
+        List<String> classes = new ArrayList<>();
+        ListTag classList = new ListTag();
+        ListTag keyList = new ListTag();
+        int[] keyClasses = new int[primitives.size() + objects.size()];
+        long[] bits = new long[primitives.size()];
+        ListTag values = new ListTag();
+        int index = 0;
+        for(DataEntry<?, ?> entry : primitives)
+        {
+            keyClasses[index] = this.writePaletteKey(entry.getKey(), classes, classList, keyList);
+            bits[index] = entry.getBits();
+            index++;
+        }
+        for(DataEntry<?, ?> entry : objects)
+        {
+            keyClasses[index] = this.writePaletteKey(entry.getKey(), classes, classList, keyList);
+            CompoundTag value = new CompoundTag();
+            value.put("", entry.writeValue());
+            values.add(value);
+            index++;
+        }
+
+        CompoundTag tag = new CompoundTag();
+        tag.putByte("Format", COMPACT_FORMAT);
+        tag.put("Classes", classList);
+        tag.put("Keys", keyList);
+        tag.putIntArray("KeyClasses", keyClasses);
+        tag.putLongArray("Bits", bits);
+        tag.put("Values", values);
+        list.add(tag);
         return list;
     }
 
+    private int writePaletteKey(SyncedDataKey<?, ?> key, List<String> classes, ListTag classList, ListTag keyList)
+    {
+        String classId = key.classKey().id().toString();
+        int classIndex = classes.indexOf(classId);
+        if(classIndex == -1)
+        {
+            classIndex = classes.size();
+            classes.add(classId);
+            classList.add(StringTag.valueOf(classId));
+        }
+        keyList.add(StringTag.valueOf(key.id().toString()));
+        return classIndex;
+    }
+
     public void deserialize(ListTag listTag)
     {
-        this.dataMap.clear();
+        this.entries = NO_ENTRIES;
+        this.dirtySlots.clear();
+        if(listTag.size() == 1 && listTag.getCompound(0).contains("Format", Tag.TAG_BYTE))
+        {
+            // Saves with values keyed by their index are converted to the list on the next save
+            CompoundTag tag = listTag.getCompound(0);
+            this.deserializeCompact(tag, tag.getByte("Format") == INDEXED_VALUES_FORMAT);
+            return;
+        }
+
+        // The original format, which is converted to the compact format on the next save
         listTag.forEach(entryTag ->
         {
             CompoundTag keyTag = (CompoundTag) entryTag;
             ResourceLocation classKey = ResourceLocation.tryParse(keyTag.getString("ClassKey"));
             ResourceLocation dataKey = ResourceLocation.tryParse(keyTag.getString("DataKey"));
+            DataEntry<?, ?> entry = this.createSavedEntry(classKey, dataKey);
             Tag value = keyTag.get("Value");
+            if(entry != null && value != null)
+            {
+                entry.readValue(value);
+            }
+        });
+    }
 
-            SyncedClassKey<?> syncedClassKey = SyncedEntityData.instance().getClassKey(classKey);
-            if(syncedClassKey == null)
-                return;
+    private void deserializeCompact(CompoundTag tag, boolean indexedValues)
+    {
+        ListTag classList = tag.getList("Classes", Tag.TAG_STRING);
+        ListTag keyList = tag.getList("Keys", Tag.TAG_STRING);
+        int[] keyClasses = tag.getIntArray("KeyClasses");
+        long[] bits = tag.getLongArray("Bits");
+        CompoundTag indexed = indexedValues ? tag.getCompound("Values") : null;
+        ListTag values = !indexedValues ? tag.getList("Values", Tag.TAG_COMPOUND) : null;
+        for(int index = 0; index < keyList.size() && index < keyClasses.length; index++)
+        {
+            ResourceLocation classKey = ResourceLocation.tryParse(classList.getString(keyClasses[index]));
+            ResourceLocation dataKey = ResourceLocation.tryParse(keyList.getString(index));
+            if(index < bits.length)
+            {
+                DataEntry<?, ?> entry = this.createSavedEntry(classKey, dataKey);
+                if(entry != null && entry.isPrimitive())
+                {
+                    entry.setBits(bits[index]);
+                }
+                continue;
+            }
+            Tag value = indexed != null ? indexed.get(Integer.toString(index)) : values.getCompound(index - bits.length).get("");
+            DataEntry<?, ?> entry = value != null ? this.createSavedEntry(classKey, dataKey) : null;
+            if(entry != null)
+            {
+                entry.readValue(value);
+            }
+        }
+    }
 
-            Map<ResourceLocation, SyncedDataKey<?, ?>> keys = SyncedEntityData.instance().getDataKeys(syncedClassKey);
-            if(keys == null)
-                return;
+    /**
+     * Creates an entry in this holder for a saved key. Returns null if the key is no longer
+     * registered, is no longer saved, or does not apply to this entity.
+     */
+    @Nullable
+    private DataEntry<?, ?> createSavedEntry(@Nullable ResourceLocation classKey, @Nullable ResourceLocation dataKey)
+    {
+        SyncedClassKey<?> syncedClassKey = SyncedEntityData.instance().getClassKey(classKey);
+        if(syncedClassKey == null)
+            return null;
 
-            SyncedDataKey<?, ?> syncedDataKey = keys.get(dataKey);
-            if(syncedDataKey == null || !syncedDataKey.save())
-                return;
+        Map<ResourceLocation, SyncedDataKey<?, ?>> keys = SyncedEntityData.instance().getDataKeys(syncedClassKey);
+        if(keys == null)
+            return null;
 
-            DataEntry<?, ?> entry = new DataEntry<>(syncedDataKey);
-            entry.readValue(value);
-            this.dataMap.put(syncedDataKey, entry);
-        });
+        SyncedDataKey<?, ?> syncedDataKey = keys.get(dataKey);
+        if(syncedDataKey == null || !syncedDataKey.save())
+            return null;
+
+        int slot = this.layout.getSlot(SyncedEntityData.instance().getInternalId(syncedDataKey));
+        if(slot == -1)
+            return null;
+
+        // Only entries that were never set have version 0, which a client is known to hold as default
+        DataEntry<?, ?> entry = new DataEntry<>(syncedDataKey);
+        entry.setVersion(SyncedEntityData.instance().nextVersion());
+        this.putEntry(slot, entry);
+        return entry;
     }
 }
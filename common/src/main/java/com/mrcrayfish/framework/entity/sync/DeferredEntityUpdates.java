@@ -0,0 +1,98 @@
+package com.mrcrayfish.framework.entity.sync;
+
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.Entity;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Tracks the updates of an entity that were held back from a single tracking player because of
+ * the distance tiers of the changed keys. Only the slots are recorded, so the latest value of a
+ * key is sent once the interval for the player has passed.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class DeferredEntityUpdates
+{
+    private final ServerPlayer viewer;
+    private final Entity entity;
+    private final BitSet pendingSlots = new BitSet();
+    private final int[] nextSyncTicks;
+
+    DeferredEntityUpdates(ServerPlayer viewer, Entity entity, int size)
+    {
+        this.viewer = viewer;
+        this.entity = entity;
+        this.nextSyncTicks = new int[size];
+    }
+
+    ServerPlayer getViewer()
+    {
+        return this.viewer;
+    }
+
+    Entity getEntity()
+    {
+        return this.entity;
+    }
+
+    /**
+     * @return true if the value of the slot can be sent to the player without waiting
+     */
+    boolean canSync(int slot, int tick)
+    {
+        return !this.pendingSlots.get(slot) && tick >= this.nextSyncTicks[slot];
+    }
+
+    void scheduleNextSync(int slot, int tick, int interval)
+    {
+        this.nextSyncTicks[slot] = tick + interval;
+    }
+
+    void defer(int slot)
+    {
+        this.pendingSlots.set(slot);
+    }
+
+    boolean hasPending()
+    {
+        return !this.pendingSlots.isEmpty();
+    }
+
+    /**
+     * Clears the deferred slots. Used when the player receives the full state of the entity.
+     */
+    void clearPending()
+    {
+        this.pendingSlots.clear();
+    }
+
+    /**
+     * Gathers the deferred entries whose interval for the player has passed. The player may have
+     * missed deltas while the entries were deferred, so these entries must be written in full.
+     *
+     * @param holder the data holder of the entity
+     * @param tick   the current server tick
+     */
+    List<DataEntry<?, ?>> gatherReady(DataHolder holder, int tick)
+    {
+        List<DataEntry<?, ?>> list = new ArrayList<>();
+        double distanceSqr = this.viewer.distanceToSqr(this.entity);
+        for(int slot = this.pendingSlots.nextSetBit(0); slot >= 0; slot = this.pendingSlots.nextSetBit(slot + 1))
+        {
+            if(tick < this.nextSyncTicks[slot])
+                continue;
+
+            this.pendingSlots.clear(slot);
+            DataEntry<?, ?> entry = holder.getEntry(slot);
+            if(entry != null)
+            {
+                this.scheduleNextSync(slot, tick, entry.getKey().syncRate().getInterval(distanceSqr));
+                list.add(entry);
+            }
+        }
+        return list;
+    }
+}
@@ -0,0 +1,19 @@
+package com.mrcrayfish.framework.entity.sync;
+
+import io.netty.buffer.ByteBuf;
+
+import javax.annotation.Nullable;
+
+/**
+ * An entity data update encoded during the tick end flush, along with the ids of the dictionary
+ * strings it references. See {@link SyncedStringDictionary}.
+ * <p>
+ * Author: MrCrayfish
+ */
+record EncodedUpdate(ByteBuf buffer, @Nullable int[] strings)
+{
+    int size()
+    {
+        return this.buffer.readableBytes();
+    }
+}
@@ -0,0 +1,74 @@
+package com.mrcrayfish.framework.entity.sync;
+
+import com.mrcrayfish.framework.network.Network;
+import com.mrcrayfish.framework.network.message.play.S2CBatchUpdateEntityData;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the entity data updates for a single player during the tick end flush. Updates may still
+ * be pending when added, and are only assembled into batch messages once every update has been
+ * encoded. Updates are appended to the current batch message, and a new message is only started once
+ * the current one reaches {@link S2CBatchUpdateEntityData#MAX_SIZE}. Dictionary strings referenced by
+ * an update that the player has not received yet are added to the same message as the update.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class EntityDataBatch
+{
+    private final List<PendingUpdate> updates = new ArrayList<>();
+    private final List<S2CBatchUpdateEntityData> messages = new ArrayList<>(1);
+    private final SyncedStringDictionary dictionary;
+    private final IntSet knownStrings;
+
+    EntityDataBatch(SyncedStringDictionary dictionary, IntSet knownStrings)
+    {
+        this.dictionary = dictionary;
+        this.knownStrings = knownStrings;
+    }
+
+    void add(PendingUpdate update)
+    {
+        this.updates.add(update);
+    }
+
+    private void append(EncodedUpdate update)
+    {
+        S2CBatchUpdateEntityData current = !this.messages.isEmpty() ? this.messages.get(this.messages.size() - 1) : null;
+        if(current == null || !current.canFit(update.buffer()))
+        {
+            current = new S2CBatchUpdateEntityData();
+            this.messages.add(current);
+        }
+        if(update.strings() != null)
+        {
+            for(int id : update.strings())
+            {
+                if(this.knownStrings.add(id))
+                {
+                    current.addString(id, this.dictionary.getString(id));
+                }
+            }
+        }
+        current.add(update.buffer());
+    }
+
+    /**
+     * Sends the updates of this batch to the player. Updates that failed to encode are skipped.
+     */
+    void send(ServerPlayer player)
+    {
+        for(PendingUpdate update : this.updates)
+        {
+            if(update.isEncoded())
+            {
+                this.append(update.getEncoded());
+            }
+        }
+        this.updates.clear();
+        this.messages.forEach(message -> Network.getPlayChannel().sendToPlayer(() -> player, message));
+    }
+}
@@ -0,0 +1,115 @@
+package com.mrcrayfish.framework.entity.sync;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.Entity;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Tracks the on demand keys of an entity that a single player has subscribed to. A subscription
+ * expires at a given tick unless it's renewed by the player requesting the key again. Newly
+ * subscribed keys are pending until their full value has been sent to the player.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class OnDemandSubscriptions
+{
+    private final ServerPlayer viewer;
+    private final Entity entity;
+    private final Int2IntMap expiryTicks = new Int2IntOpenHashMap();
+    private final BitSet pendingSlots = new BitSet();
+
+    OnDemandSubscriptions(ServerPlayer viewer, Entity entity)
+    {
+        this.viewer = viewer;
+        this.entity = entity;
+    }
+
+    ServerPlayer getViewer()
+    {
+        return this.viewer;
+    }
+
+    Entity getEntity()
+    {
+        return this.entity;
+    }
+
+    /**
+     * Subscribes to the key in the slot or renews the subscription
+     *
+     * @return true if the key was not subscribed to, which means the full value must be sent
+     */
+    boolean subscribe(int slot, int tick, int expiryTick)
+    {
+        int previous = this.expiryTicks.put(slot, expiryTick);
+        if(previous <= tick)
+        {
+            this.pendingSlots.set(slot);
+            return true;
+        }
+        return false;
+    }
+
+    void unsubscribe(int slot)
+    {
+        this.expiryTicks.remove(slot);
+        this.pendingSlots.clear(slot);
+    }
+
+    /**
+     * @return true if the player is subscribed to the key in the slot and has received its full value
+     */
+    boolean isSubscribed(int slot, int tick)
+    {
+        return !this.pendingSlots.get(slot) && this.expiryTicks.get(slot) > tick;
+    }
+
+    /**
+     * Removes the subscriptions that have expired
+     *
+     * @return true if there are no subscriptions left
+     */
+    boolean expire(int tick)
+    {
+        this.expiryTicks.int2IntEntrySet().removeIf(entry -> {
+            if(entry.getIntValue() <= tick)
+            {
+                this.pendingSlots.clear(entry.getIntKey());
+                return true;
+            }
+            return false;
+        });
+        return this.expiryTicks.isEmpty();
+    }
+
+    boolean hasPending()
+    {
+        return !this.pendingSlots.isEmpty();
+    }
+
+    /**
+     * Gathers the entries of the newly subscribed keys. These must be written in full. Keys without
+     * a value are gathered as default entries, since the player may still hold a value received
+     * during an earlier subscription.
+     *
+     * @param layout the layout of the entity
+     * @param holder the data holder of the entity, or null if it has none
+     */
+    List<DataEntry<?, ?>> gatherPending(SyncedKeyLayout layout, @Nullable DataHolder holder)
+    {
+        List<DataEntry<?, ?>> list = new ArrayList<>();
+        for(int slot = this.pendingSlots.nextSetBit(0); slot >= 0; slot = this.pendingSlots.nextSetBit(slot + 1))
+        {
+            DataEntry<?, ?> entry = holder != null ? holder.getEntry(slot) : null;
+            list.add(entry != null ? entry : new DataEntry<>(layout.getKey(slot)));
+        }
+        this.pendingSlots.clear();
+        return list;
+    }
+}
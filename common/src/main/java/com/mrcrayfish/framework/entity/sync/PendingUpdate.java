@@ -0,0 +1,73 @@
+package com.mrcrayfish.framework.entity.sync;
+
+import net.minecraft.world.entity.Entity;
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * An entity data update planned during the tick end flush. The update is added to the batches of
+ * its receivers straight away, but encoded later by the {@link UpdateEncoder}, so the order of the
+ * updates in each batch is kept while encoding happens off the server thread.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class PendingUpdate
+{
+    @Nullable
+    private final Entity entity;
+    @Nullable
+    private final List<DataEntry<?, ?>> entries;
+    private final boolean delta;
+    @Nullable
+    private EncodedUpdate encoded;
+
+    PendingUpdate(Entity entity, List<DataEntry<?, ?>> entries, boolean delta)
+    {
+        this.entity = entity;
+        this.entries = entries;
+        this.delta = delta;
+    }
+
+    private PendingUpdate(EncodedUpdate encoded)
+    {
+        this.entity = null;
+        this.entries = null;
+        this.delta = false;
+        this.encoded = encoded;
+    }
+
+    /**
+     * @return a pending update that has already been encoded
+     */
+    static PendingUpdate of(EncodedUpdate encoded)
+    {
+        return new PendingUpdate(encoded);
+    }
+
+    void encode(UpdateEncoder.Encoder encoder)
+    {
+        if(this.encoded == null && this.entity != null && this.entries != null)
+        {
+            this.encoded = encoder.encode(this.entity, this.entries, this.delta);
+        }
+    }
+
+    @Nullable
+    Entity getEntity()
+    {
+        return this.entity;
+    }
+
+    boolean isEncoded()
+    {
+        return this.encoded != null;
+    }
+
+    EncodedUpdate getEncoded()
+    {
+        Validate.validState(this.encoded != null, "Update has not been encoded");
+        return this.encoded;
+    }
+}
@@ -0,0 +1,13 @@
+package com.mrcrayfish.framework.entity.sync;
+
+import com.mrcrayfish.framework.api.sync.SyncedDataKey;
+import net.minecraft.world.entity.Entity;
+
+/**
+ * A value set from a thread other than the server thread, which is applied at the end of the tick.
+ * <p>
+ * Author: MrCrayfish
+ */
+record PendingWrite(Entity entity, SyncedDataKey<?, ?> key, Object value)
+{
+}
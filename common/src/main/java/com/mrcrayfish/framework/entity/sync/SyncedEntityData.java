@@ -1,45 +1,71 @@
 package com.mrcrayfish.framework.entity.sync;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.mrcrayfish.framework.Constants;
 import com.mrcrayfish.framework.FrameworkData;
 import com.mrcrayfish.framework.api.event.EntityEvents;
 import com.mrcrayfish.framework.api.event.PlayerEvents;
+import com.mrcrayfish.framework.api.event.ServerEvents;
 import com.mrcrayfish.framework.api.event.TickEvents;
+import com.mrcrayfish.framework.api.sync.IPrimitiveDataSerializer;
+import com.mrcrayfish.framework.api.sync.SyncRate;
 import com.mrcrayfish.framework.api.sync.SyncedClassKey;
 import com.mrcrayfish.framework.api.sync.SyncedDataKey;
 import com.mrcrayfish.framework.network.Network;
 import com.mrcrayfish.framework.network.message.handshake.S2CSyncedEntityData;
+import com.mrcrayfish.framework.network.message.play.C2SRequestEntityData;
+import com.mrcrayfish.framework.network.message.play.S2CRestorePlayerData;
 import com.mrcrayfish.framework.network.message.play.S2CUpdateEntityData;
 import com.mrcrayfish.framework.platform.Services;
+import com.mrcrayfish.framework.sync.KeyHashes;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.ints.Int2LongMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceMap;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceOpenHashMap;
-import it.unimi.dsi.fastutil.objects.Object2BooleanMap;
-import it.unimi.dsi.fastutil.objects.Object2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceMap;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.objects.Reference2IntMap;
-import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2LongMap;
+import it.unimi.dsi.fastutil.objects.Reference2LongOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceArraySet;
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
+import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.level.Level;
-import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.Validate;
 import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Queue;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 /**
@@ -60,6 +86,9 @@ import java.util.stream.Collectors;
  * <p>Then anywhere you want (as long as it's on the main thread), you can set the value by calling</p>
  * <code>SyncedPlayerData.instance().set(player, CURRENT_SPEED, 5.0);</code>
  * <p></p>
+ * <p>Values can also be set from other threads by calling {@link #setAsync}, which applies the value
+ * at the end of the server tick.</p>
+ * <p></p>
  * <p>The value can be retrieved on the server or client by calling</p>
  * <code>SyncedPlayerData.instance().get(player, CURRENT_SPEED);</code>
  * <p></p>
@@ -68,29 +97,52 @@ import java.util.stream.Collectors;
 public final class SyncedEntityData
 {
     private static final Marker SYNCED_ENTITY_DATA_MARKER = MarkerFactory.getMarker("SYNCED_ENTITY_DATA");
+    private static final int ON_DEMAND_PRUNE_INTERVAL = 100;
     private static SyncedEntityData instance;
 
     private final Set<SyncedClassKey<?>> registeredClassKeys = new HashSet<>();
     private final Object2ObjectMap<ResourceLocation, SyncedClassKey<?>> idToClassKey = new Object2ObjectOpenHashMap<>();
-    private final Object2ObjectMap<String, SyncedClassKey<?>> classNameToClassKey = new Object2ObjectOpenHashMap<>();
-    private final Object2BooleanMap<String> clientClassNameCapabilityCache = new Object2BooleanOpenHashMap<>();
-    private final Object2BooleanMap<String> serverClassNameCapabilityCache = new Object2BooleanOpenHashMap<>();
 
     private final Set<SyncedDataKey<?, ?>> registeredDataKeys = new HashSet<>();
     private final Reference2ObjectMap<SyncedClassKey<?>, HashMap<ResourceLocation, SyncedDataKey<?, ?>>> classToKeys = new Reference2ObjectOpenHashMap<>();
-    private final Reference2IntMap<SyncedDataKey<?, ?>> internalIds = new Reference2IntOpenHashMap<>();
     private final Int2ReferenceMap<SyncedDataKey<?, ?>> syncedIdToKey = new Int2ReferenceOpenHashMap<>();
+    private final Reference2LongMap<SyncedDataKey<?, ?>> defaultBits = new Reference2LongOpenHashMap<>();
+    private final Reference2ObjectMap<SyncedDataKey<?, ?>, Object> defaultValues = new Reference2ObjectOpenHashMap<>();
+    private final Reference2ObjectMap<SyncedDataKey<?, ?>, SyncedKeyHandle> keyHandles = new Reference2ObjectOpenHashMap<>();
+    private volatile ClassValue<SyncedKeyLayout> classLayouts = this.createLayoutCache();
+    private final SyncedStringDictionary stringDictionary = new SyncedStringDictionary();
+    private final UpdateEncoder encoder = new UpdateEncoder(this::encodeUpdate);
+    private OptionalLong keyTableFingerprint = OptionalLong.empty();
 
     private final AtomicInteger nextIdTracker = new AtomicInteger();
-    private final List<Entity> dirtyEntities = new ArrayList<>();
-    private boolean dirty = false;
+    private final ReferenceLinkedOpenHashSet<Entity> dirtyEntities = new ReferenceLinkedOpenHashSet<>();
+    private final Reference2ObjectMap<Entity, ReferenceArraySet<ServerPlayer>> entityViewers = new Reference2ObjectOpenHashMap<>();
+    private final Reference2ObjectMap<ServerPlayer, ReferenceLinkedOpenHashSet<Entity>> pendingSnapshots = new Reference2ObjectOpenHashMap<>();
+    private final Reference2ObjectMap<Entity, Reference2ObjectMap<ServerPlayer, DeferredEntityUpdates>> deferredUpdates = new Reference2ObjectOpenHashMap<>();
+    private final ReferenceLinkedOpenHashSet<DeferredEntityUpdates> pendingDeferredUpdates = new ReferenceLinkedOpenHashSet<>();
+    private final Map<ServerLevel, Queue<PendingWrite>> pendingWrites = new ConcurrentHashMap<>();
+    private final Reference2ObjectMap<ServerPlayer, Reference2ObjectMap<Entity, VisibilityMask>> visibilityMasks = new Reference2ObjectOpenHashMap<>();
+    private final ReferenceLinkedOpenHashSet<ServerPlayer> staleVisibility = new ReferenceLinkedOpenHashSet<>();
+    private final Reference2ObjectMap<Entity, Reference2ObjectMap<ServerPlayer, OnDemandSubscriptions>> onDemandSubscriptions = new Reference2ObjectOpenHashMap<>();
+    private final ReferenceLinkedOpenHashSet<OnDemandSubscriptions> pendingOnDemand = new ReferenceLinkedOpenHashSet<>();
+    private volatile Long2ReferenceMap<SyncedDataKey<?, ?>> keysByHash;
+    private int initialSyncBudget = Integer.getInteger("framework.initialSyncBudget", 65536);
+    private int onDemandTimeout = Integer.getInteger("framework.onDemandTimeout", 200);
+    private final Map<UUID, Int2LongMap> sentPlayerVersions = new HashMap<>();
+    private final AtomicLong nextVersion = new AtomicLong(1);
+    @Nullable
+    private DataHolder localPlayerHolder;
 
     private SyncedEntityData()
     {
         PlayerEvents.START_TRACKING_ENTITY.register(this::onStartTracking);
+        PlayerEvents.END_TRACKING_ENTITY.register(this::onStopTracking);
         EntityEvents.JOIN_LEVEL.register(this::onEntityJoinWorld);
+        EntityEvents.LEAVE_LEVEL.register(this::onEntityLeaveWorld);
         TickEvents.END_SERVER.register(this::onServerTickEnd);
         PlayerEvents.COPY.register(this::onPlayerClone);
+        PlayerEvents.LOGGED_OUT.register(this::onPlayerLoggedOut);
+        ServerEvents.STOPPED.register(this::onServerStopped);
     }
 
     public static SyncedEntityData instance()
@@ -108,7 +160,6 @@ public final class SyncedEntityData
         {
             this.registeredClassKeys.add(classKey);
             this.idToClassKey.put(classKey.id(), classKey);
-            this.classNameToClassKey.put(classKey.entityClass().getName(), classKey);
         }
     }
 
@@ -133,8 +184,21 @@ public final class SyncedEntityData
         this.registeredDataKeys.add(dataKey);
         this.classToKeys.computeIfAbsent(classKey, c -> new HashMap<>()).put(keyId, dataKey);
         int nextId = this.nextIdTracker.getAndIncrement();
-        this.internalIds.put(dataKey, nextId);
+        this.keyHandles.put(dataKey, new SyncedKeyHandle(nextId, dataKey.indexed()));
         this.syncedIdToKey.put(nextId, dataKey);
+        if(dataKey.serializer() instanceof IPrimitiveDataSerializer<T> primitive)
+        {
+            // Cached so reading an unwritten primitive key doesn't need to call the supplier
+            this.defaultBits.put(dataKey, primitive.toBits(dataKey.defaultValueSupplier().get()));
+        }
+        else
+        {
+            // Cached so checking if a value is the default doesn't need to call the supplier
+            this.defaultValues.put(dataKey, dataKey.defaultValueSupplier().get());
+        }
+        this.classLayouts = this.createLayoutCache(); // Layouts are no longer valid
+        this.keyTableFingerprint = OptionalLong.empty();
+        this.keysByHash = null;
         Constants.LOG.info(SYNCED_ENTITY_DATA_MARKER, "Registered synced data key {} for {}", dataKey.id(), classKey.id());
     }
 
@@ -147,18 +211,65 @@ public final class SyncedEntityData
      */
     public <E extends Entity, T> void set(E entity, SyncedDataKey<?, ?> key, T value)
     {
-        if(!this.registeredDataKeys.contains(key))
+        key = this.resolveRegistered(key);
+        DataHolder holder = this.getDataHolder(entity);
+        if(holder == null)
         {
-            String keys = this.registeredDataKeys.stream().map(k -> k.pairKey().toString()).collect(Collectors.joining(",", "[", "]"));
-            Constants.LOG.info(SYNCED_ENTITY_DATA_MARKER, "Registered keys before throwing exception: {}", keys);
-            throw new IllegalArgumentException(String.format("The synced data key %s for %s is not registered!", key.id(), key.classKey().id()));
+            this.checkApplies(entity, key);
+            return;
         }
-        DataHolder holder = this.getDataHolder(entity);
-        if(holder != null && holder.set(entity, key, value))
+        if(holder.set(entity, key, value))
+        {
+            if(!entity.level().isClientSide() && holder.isDirty())
+            {
+                // Identity based set, so an entity is only queued once per tick
+                this.dirtyEntities.add(entity);
+            }
+        }
+    }
+
+    /**
+     * Sets the value of a synced data key from any thread. The value is queued and applied to the
+     * entity at the end of the current server tick, before changes are synced to clients. If the
+     * key is set multiple times before then, the last value wins. Values queued for an entity that
+     * is removed before the end of the tick are discarded.
+     * <p>
+     * Values can be read from any thread with {@link #get}, which returns the last applied value.
+     *
+     * @param entity an entity on the logical server
+     * @param key    a registered synced data key
+     * @param value  a new value that matches the synced data key type
+     */
+    public <E extends Entity, T> void setAsync(E entity, SyncedDataKey<E, T> key, T value)
+    {
+        key = this.resolveRegistered(key);
+        if(!(entity.level() instanceof ServerLevel level))
+        {
+            throw new IllegalArgumentException("Synced data can only be set asynchronously on the logical server");
+        }
+        this.pendingWrites.computeIfAbsent(level, l -> new ConcurrentLinkedQueue<>()).add(new PendingWrite(entity, key, value));
+    }
+
+    /**
+     * Marks the value of a synced data key as changed, so it will be synced to clients. This should
+     * be called after a mutable value, like a compound tag or item stack, has been changed in place.
+     *
+     * @param entity the entity that holds the value
+     * @param key    a registered synced data key
+     */
+    public <E extends Entity> void markDirty(E entity, SyncedDataKey<?, ?> key)
+    {
+        key = this.resolveRegistered(key);
+        DataHolder holder = this.getDataHolderIfPresent(entity);
+        if(holder == null)
+        {
+            this.checkApplies(entity, key);
+            return;
+        }
+        if(holder.markDirty(entity, key))
         {
-            if(!entity.level().isClientSide())
+            if(!entity.level().isClientSide() && holder.isDirty())
             {
-                this.dirty = true;
                 this.dirtyEntities.add(entity);
             }
         }
@@ -173,24 +284,213 @@ public final class SyncedEntityData
      */
     public <E extends Entity, T> T get(E entity, SyncedDataKey<E, T> key)
     {
-        if(!this.registeredDataKeys.contains(key))
+        key = this.resolveRegistered(key);
+        DataHolder holder = this.getDataHolderIfPresent(entity);
+        if(holder == null)
+        {
+            this.checkApplies(entity, key);
+            return key.defaultValueSupplier().get();
+        }
+        return holder.get(key);
+    }
+
+    public <E extends Entity> int getInt(E entity, SyncedDataKey<E, Integer> key)
+    {
+        if(key.serializer() instanceof IPrimitiveDataSerializer.OfInt)
+        {
+            return (int) this.getBits(entity, key);
+        }
+        return this.get(entity, key);
+    }
+
+    public <E extends Entity> void setInt(E entity, SyncedDataKey<E, Integer> key, int value)
+    {
+        if(key.serializer() instanceof IPrimitiveDataSerializer.OfInt)
+        {
+            this.setBits(entity, key, value);
+            return;
+        }
+        this.set(entity, key, value);
+    }
+
+    public <E extends Entity> long getLong(E entity, SyncedDataKey<E, Long> key)
+    {
+        if(key.serializer() instanceof IPrimitiveDataSerializer.OfLong)
+        {
+            return this.getBits(entity, key);
+        }
+        return this.get(entity, key);
+    }
+
+    public <E extends Entity> void setLong(E entity, SyncedDataKey<E, Long> key, long value)
+    {
+        if(key.serializer() instanceof IPrimitiveDataSerializer.OfLong)
+        {
+            this.setBits(entity, key, value);
+            return;
+        }
+        this.set(entity, key, value);
+    }
+
+    public <E extends Entity> float getFloat(E entity, SyncedDataKey<E, Float> key)
+    {
+        if(key.serializer() instanceof IPrimitiveDataSerializer.OfFloat)
+        {
+            return Float.intBitsToFloat((int) this.getBits(entity, key));
+        }
+        return this.get(entity, key);
+    }
+
+    public <E extends Entity> void setFloat(E entity, SyncedDataKey<E, Float> key, float value)
+    {
+        if(key.serializer() instanceof IPrimitiveDataSerializer.OfFloat)
+        {
+            this.setBits(entity, key, Float.floatToIntBits(value));
+            return;
+        }
+        this.set(entity, key, value);
+    }
+
+    public <E extends Entity> double getDouble(E entity, SyncedDataKey<E, Double> key)
+    {
+        if(key.serializer() instanceof IPrimitiveDataSerializer.OfDouble)
+        {
+            return Double.longBitsToDouble(this.getBits(entity, key));
+        }
+        return this.get(entity, key);
+    }
+
+    public <E extends Entity> void setDouble(E entity, SyncedDataKey<E, Double> key, double value)
+    {
+        if(key.serializer() instanceof IPrimitiveDataSerializer.OfDouble)
+        {
+            this.setBits(entity, key, Double.doubleToLongBits(value));
+            return;
+        }
+        this.set(entity, key, value);
+    }
+
+    public <E extends Entity> boolean getBoolean(E entity, SyncedDataKey<E, Boolean> key)
+    {
+        if(key.serializer() instanceof IPrimitiveDataSerializer.OfBoolean)
+        {
+            return this.getBits(entity, key) != 0;
+        }
+        return this.get(entity, key);
+    }
+
+    public <E extends Entity> void setBoolean(E entity, SyncedDataKey<E, Boolean> key, boolean value)
+    {
+        if(key.serializer() instanceof IPrimitiveDataSerializer.OfBoolean)
+        {
+            this.setBits(entity, key, value ? 1L : 0L);
+            return;
+        }
+        this.set(entity, key, value);
+    }
+
+    private long getBits(Entity entity, SyncedDataKey<?, ?> key)
+    {
+        key = this.resolveRegistered(key);
+        DataHolder holder = this.getDataHolderIfPresent(entity);
+        if(holder == null)
+        {
+            this.checkApplies(entity, key);
+            return this.getDefaultBits(key);
+        }
+        return holder.getBits(key);
+    }
+
+    /**
+     * Checks that a key applies to an entity without a data holder, so reading or writing a key
+     * that does not apply fails the same way whether the entity holds data or not.
+     */
+    private void checkApplies(Entity entity, SyncedDataKey<?, ?> key)
+    {
+        this.getLayout(entity.getClass()).getSlot(key, entity.getClass());
+    }
+
+    private void setBits(Entity entity, SyncedDataKey<?, ?> key, long bits)
+    {
+        key = this.resolveRegistered(key);
+        DataHolder holder = this.getDataHolder(entity);
+        if(holder == null)
+        {
+            this.checkApplies(entity, key);
+            return;
+        }
+        if(holder.setBits(entity, key, bits))
+        {
+            if(!entity.level().isClientSide() && holder.isDirty())
+            {
+                this.dirtyEntities.add(entity);
+            }
+        }
+    }
+
+    /**
+     * @return the bits of the default value of the key, or zero if the key does not use a primitive serializer
+     */
+    long getDefaultBits(SyncedDataKey<?, ?> key)
+    {
+        return this.defaultBits.getLong(key);
+    }
+
+    /**
+     * @return a cached default value of a registered key that doesn't use a primitive serializer.
+     * The instance is shared, so it must only be used for comparisons.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T getDefaultValue(SyncedDataKey<?, T> key)
+    {
+        return (T) this.defaultValues.get(key);
+    }
+
+    /**
+     * Resolves the registered instance of a key. Keys are matched by id, so a key that is equal to a
+     * registered key but was built separately resolves to the registered one.
+     */
+    @SuppressWarnings("unchecked")
+    private <K extends SyncedDataKey<?, ?>> K resolveRegistered(K key)
+    {
+        if(this.keyHandles.containsKey(key))
+            return key;
+
+        SyncedClassKey<?> classKey = this.idToClassKey.get(key.classKey().id());
+        Map<ResourceLocation, SyncedDataKey<?, ?>> dataKeys = classKey != null ? this.classToKeys.get(classKey) : null;
+        SyncedDataKey<?, ?> registered = dataKeys != null ? dataKeys.get(key.id()) : null;
+        if(registered == null)
         {
             String keys = this.registeredDataKeys.stream().map(k -> k.pairKey().toString()).collect(Collectors.joining(",", "[", "]"));
             Constants.LOG.info(SYNCED_ENTITY_DATA_MARKER, "Registered keys before throwing exception: {}", keys);
             throw new IllegalArgumentException(String.format("The synced data key %s for %s is not registered!", key.id(), key.classKey().id()));
         }
-        DataHolder holder = this.getDataHolder(entity);
-        return holder != null ? holder.get(key) : key.defaultValueSupplier().get();
+        return (K) registered;
     }
 
     public <E extends Entity, T> void updateClientEntry(Entity entity, DataEntry<E, T> entry)
     {
+        if(entry.isPrimitive())
+        {
+            this.setBits(entity, entry.getKey(), entry.getBits());
+            return;
+        }
+        if(entry.isDelta())
+        {
+            DataHolder holder = this.getDataHolder(entity);
+            if(holder != null)
+            {
+                holder.set(entity, entry.getKey(), entry.applyDelta(holder.get(entry.getKey())));
+            }
+            return;
+        }
         SyncedEntityData.instance().set(entity, entry.getKey(), entry.getValue());
     }
 
     public int getInternalId(SyncedDataKey<?, ?> key)
     {
-        return this.internalIds.getInt(key);
+        SyncedKeyHandle handle = this.keyHandles.get(key);
+        return handle != null ? handle.getInternalId() : -1;
     }
 
     SyncedClassKey<?> getClassKey(ResourceLocation id)
@@ -214,167 +514,1187 @@ public final class SyncedEntityData
         return ImmutableSet.copyOf(this.registeredDataKeys);
     }
 
+    /**
+     * Gets the key layout for the given entity class. The layout contains the keys registered to
+     * the class and all of its superclasses, and is only computed once per class.
+     *
+     * @param entityClass the concrete class of an entity
+     * @return the key layout for the class
+     */
+    SyncedKeyLayout getLayout(Class<? extends Entity> entityClass)
+    {
+        return this.classLayouts.get(entityClass);
+    }
+
+    /**
+     * Creates a lock-free cache of layouts keyed by class identity. This is safe to use from any
+     * thread, which allows entities to be created off the main thread.
+     */
+    private ClassValue<SyncedKeyLayout> createLayoutCache()
+    {
+        return new ClassValue<>()
+        {
+            @Override
+            protected SyncedKeyLayout computeValue(Class<?> type)
+            {
+                return SyncedEntityData.this.createLayout(type);
+            }
+        };
+    }
+
+    private SyncedKeyLayout createLayout(Class<?> entityClass)
+    {
+        Set<String> classNames = new HashSet<>();
+        Class<?> targetClass = entityClass;
+        while(targetClass != null && !targetClass.isAssignableFrom(Entity.class))
+        {
+            classNames.add(targetClass.getName());
+            targetClass = targetClass.getSuperclass();
+        }
+        List<SyncedDataKey<?, ?>> keys = new ArrayList<>();
+        this.classToKeys.forEach((classKey, dataKeys) ->
+        {
+            if(classNames.contains(classKey.entityClass().getName()))
+            {
+                keys.addAll(dataKeys.values());
+            }
+        });
+        keys.sort(Comparator.comparingInt(this::getInternalId));
+        int[] internalIds = keys.stream().mapToInt(this::getInternalId).toArray();
+        return SyncedKeyLayout.create(keys, internalIds);
+    }
+
     @Nullable
     private DataHolder getDataHolder(Entity entity)
     {
         return Services.ENTITY.getDataHolder(entity, false);
     }
 
+    /**
+     * Gets the data holder of the entity without creating it. Used when reading values, since an
+     * entity that has never been written to only holds default values.
+     */
+    @Nullable
+    private DataHolder getDataHolderIfPresent(Entity entity)
+    {
+        return Services.ENTITY.getDataHolderIfPresent(entity);
+    }
+
     public boolean hasSyncedDataKey(Entity entity)
     {
         /* It's possible that the entity doesn't have a key, but it's superclass or subsequent does
-         * have a synced data key. In order to prevent checking this every time we attach the
-         * capability, a simple one time check can be performed then cache the result. */
-        Class<? extends Entity> entityClass = entity.getClass();
-        return this.getClassNameCapabilityCache(entity.level().isClientSide).computeIfAbsent(entityClass.getName(), c ->
+         * have a synced data key. The layout of a class contains the keys of all its superclasses
+         * and is computed once per class, so this is only a lookup by class identity. */
+        return !this.getLayout(entity.getClass()).isEmpty();
+    }
+
+    /**
+     * Performs the given action for every entity in the level that holds a non-default value for
+     * the key. Only the entities with a value are visited, instead of every loaded entity. The key
+     * must be indexed, see {@link SyncedDataKey.Builder#indexed()}. This must be called on the
+     * server thread. Entities whose value is changed by the action may or may not be visited.
+     *
+     * @param level    a level on the logical server
+     * @param key      a registered and indexed synced data key
+     * @param consumer the action to perform for each entity and its value
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends Entity, T> void forEachNonDefault(Level level, SyncedDataKey<E, T> key, BiConsumer<E, T> consumer)
+    {
+        key = this.resolveRegistered(key);
+        Validate.isTrue(key.indexed(), "The synced data key %s for %s is not indexed", key.id(), key.classKey().id());
+        SyncedKeyColumn column = !level.isClientSide() ? this.keyHandles.get(key).getColumn(level) : null;
+        if(column == null)
+            return;
+
+        // Iterates backwards, so entities removed from the column during iteration aren't skipped
+        IPrimitiveDataSerializer<T> primitive = column.isPrimitive() ? (IPrimitiveDataSerializer<T>) key.serializer() : null;
+        for(int i = column.size() - 1; i >= 0; i--)
         {
-            Class<?> targetClass = entityClass;
-            while(!targetClass.isAssignableFrom(Entity.class)) // Should be good enough
+            if(i >= column.size())
+                continue;
+
+            int entityId = column.getEntityId(i);
+            Entity entity = level.getEntity(entityId);
+            if(entity == null || entity.isRemoved())
             {
-                if(this.classNameToClassKey.containsKey(targetClass.getName()))
-                {
-                    return true;
-                }
-                targetClass = targetClass.getSuperclass();
+                column.remove(entityId);
+                continue;
             }
-            return false;
-        });
+            T value = primitive != null ? primitive.fromBits(column.getBits(i)) : (T) column.getValue(i);
+            consumer.accept((E) entity, value);
+        }
     }
 
     /**
-     * Gets the class name capability cache for the effective side. This is needed to avoid
-     * concurrency issue due to client and server threads; fast util does not support concurrent maps.
+     * Sets the maximum amount of bytes of initial synced data sent to each player per tick when
+     * they start tracking entities. Snapshots that don't fit into the budget are sent on the
+     * following ticks. At least one snapshot is always sent per tick, even if it exceeds the
+     * budget. The default can be changed with the system property "framework.initialSyncBudget".
+     *
+     * @param bytes the budget in bytes per player per tick
      */
-    private Object2BooleanMap<String> getClassNameCapabilityCache(boolean client)
+    public void setInitialSyncBudget(int bytes)
     {
-        return client ? this.clientClassNameCapabilityCache : this.serverClassNameCapabilityCache;
+        Validate.isTrue(bytes > 0, "The initial sync budget must be greater than zero");
+        this.initialSyncBudget = bytes;
     }
 
     private void onStartTracking(Entity target, Player player)
     {
         if(!player.level().isClientSide() && this.hasSyncedDataKey(target))
         {
-            DataHolder holder = this.getDataHolder(target);
-            if(holder != null)
-            {
-                List<DataEntry<?, ?>> entries = holder.gatherAll();
-                entries.removeIf(entry -> !entry.getKey().syncMode().isTracking());
-                if(!entries.isEmpty())
-                {
-                    Network.getPlayChannel().sendToPlayer(() -> (ServerPlayer) player, new S2CUpdateEntityData(target.getId(), entries));
-                }
-            }
+            ServerPlayer serverPlayer = (ServerPlayer) player;
+            this.entityViewers.computeIfAbsent(target, e -> new ReferenceArraySet<>()).add(serverPlayer);
+            this.removeDeferredUpdates(target, serverPlayer);
+            // The snapshot is gathered at the end of the tick, so it will contain any changes made until then
+            this.pendingSnapshots.computeIfAbsent(serverPlayer, p -> new ReferenceLinkedOpenHashSet<>()).add(target);
         }
     }
 
-    private void onEntityJoinWorld(Entity entity, Level level, boolean disk)
+    private void onStopTracking(Entity target, Player player)
     {
-        if(entity instanceof Player player && !level.isClientSide() && this.hasSyncedDataKey(player))
+        if(!player.level().isClientSide())
         {
-            DataHolder holder = this.getDataHolder(player);
-            if(holder != null)
+            ReferenceArraySet<ServerPlayer> viewers = this.entityViewers.get(target);
+            if(viewers != null && viewers.remove(player) && viewers.isEmpty())
             {
-                List<DataEntry<?, ?>> entries = holder.gatherAll();
-                if(!entries.isEmpty())
-                {
-                    Network.getPlayChannel().sendToPlayer(() -> (ServerPlayer) player, new S2CUpdateEntityData(player.getId(), entries));
-                }
+                this.entityViewers.remove(target);
             }
+            ReferenceLinkedOpenHashSet<Entity> pending = this.pendingSnapshots.get(player);
+            if(pending != null && pending.remove(target) && pending.isEmpty())
+            {
+                this.pendingSnapshots.remove(player);
+            }
+            this.removeDeferredUpdates(target, player);
+            this.removeVisibilityMask(target, player);
+            this.removeOnDemandSubscriptions(target, player);
         }
     }
 
-    private void onPlayerClone(Player oldPlayer, Player newPlayer, boolean respawn)
+    private void onPlayerLoggedOut(Player player)
     {
-        if(!this.hasSyncedDataKey(newPlayer))
-            return;
-
-        DataHolder oldHolder = Services.ENTITY.getDataHolder(oldPlayer, true);
-        if(oldHolder == null)
-            return;
-
-        DataHolder newHolder = this.getDataHolder(newPlayer);
-        if(newHolder == null)
-            return;
-
-        Map<SyncedDataKey<?, ?>, DataEntry<?, ?>> dataMap = new HashMap<>(oldHolder.dataMap);
-        if(respawn)
+        if(!player.level().isClientSide())
         {
-            dataMap.entrySet().removeIf(entry -> !entry.getKey().persistent());
+            this.pendingSnapshots.remove(player);
+            this.visibilityMasks.remove(player);
+            this.staleVisibility.remove(player);
+            this.removeOnDemandSubscriptions(player);
+            this.sentPlayerVersions.remove(player.getUUID());
+            this.stringDictionary.removePlayer(player.getUUID());
         }
-        newHolder.dataMap = dataMap;
     }
 
-    private void onServerTickEnd(MinecraftServer server)
+    private void onServerStopped(MinecraftServer server)
     {
-        if(!this.dirty)
-            return;
+        // Entity ids are only unique while the server is running
+        this.keyHandles.values().forEach(SyncedKeyHandle::clearColumns);
+        this.stringDictionary.clear();
+        this.encoder.shutdown();
+    }
 
-        if(this.dirtyEntities.isEmpty())
+    private void onEntityJoinWorld(Entity entity, Level level, boolean disk)
+    {
+        if(!level.isClientSide() && this.getLayout(entity.getClass()).hasIndexedKeys())
         {
-            this.dirty = false;
-            return;
+            this.indexEntity(entity, level);
         }
-
-        for(Entity entity : this.dirtyEntities)
+        if(entity instanceof Player player && !level.isClientSide() && this.hasSyncedDataKey(player))
         {
-            DataHolder holder = this.getDataHolder(entity);
-            if(holder == null || !holder.isDirty())
-                continue;
-
-            List<DataEntry<?, ?>> entries = holder.gatherDirty();
-            if(entries.isEmpty())
-                continue;
+            // After respawning or changing dimension, the client still holds the values last sent to it
+            ServerPlayer serverPlayer = (ServerPlayer) player;
+            DataHolder holder = this.getDataHolderIfPresent(player);
+            Int2LongMap sentVersions = this.sentPlayerVersions.get(player.getUUID());
+            if(holder == null)
+            {
+                this.sentPlayerVersions.remove(player.getUUID());
+                return;
+            }
 
-            List<DataEntry<?, ?>> selfEntries = entries.stream().filter(entry -> entry.getKey().syncMode().isSelf()).collect(Collectors.toList());
-            if(!selfEntries.isEmpty() && entity instanceof ServerPlayer)
+            // Nothing has been sent to the client yet when a player first logs in
+            boolean restore = sentVersions != null;
+            if(restore)
             {
-                Network.getPlayChannel().sendToPlayer(() -> (ServerPlayer) entity, new S2CUpdateEntityData(entity.getId(), selfEntries));
+                Network.getPlayChannel().sendToPlayer(() -> serverPlayer, new S2CRestorePlayerData(player.getId()));
             }
 
-            List<DataEntry<?, ?>> trackingEntries = entries.stream().filter(entry -> entry.getKey().syncMode().isTracking()).collect(Collectors.toList());
-            if(!trackingEntries.isEmpty())
+            List<DataEntry<?, ?>> entries;
+            if(restore)
+            {
+                entries = holder.gatherChanged(sentVersions);
+            }
+            else
+            {
+                entries = holder.gatherAll();
+                entries.removeIf(entry -> entry.getKey().syncMode().isOnDemand());
+            }
+            if(!entries.isEmpty())
             {
-                Network.getPlayChannel().sendToTracking(() -> entity, new S2CUpdateEntityData(entity.getId(), trackingEntries));
+                EntityDataBatch batch = new EntityDataBatch(this.stringDictionary, this.stringDictionary.getKnownIds(serverPlayer));
+                batch.add(PendingUpdate.of(this.encodeUpdate(player, entries, false)));
+                batch.send(serverPlayer);
+                markSentFull(entries, serverPlayer);
             }
-            holder.clean();
+            this.recordSentVersions(serverPlayer, entries);
         }
-        this.dirtyEntities.clear();
-        this.dirty = false;
     }
 
-    public boolean updateMappings(S2CSyncedEntityData message)
+    private void onEntityLeaveWorld(Entity entity, Level level)
     {
-        this.syncedIdToKey.clear();
-
-        List<Pair<ResourceLocation, ResourceLocation>> missingKeys = new ArrayList<>();
-        message.getKeyMap().forEach((classId, list) ->
+        if(!level.isClientSide())
         {
-            SyncedClassKey<?> classKey = this.idToClassKey.get(classId);
-            if(classKey == null || !this.classToKeys.containsKey(classKey))
+            if(this.getLayout(entity.getClass()).hasIndexedKeys())
             {
-                list.forEach(pair -> missingKeys.add(Pair.of(classId, pair.getLeft())));
-                return;
+                this.unindexEntity(entity, level);
             }
-
-            Map<ResourceLocation, SyncedDataKey<?, ?>> keys = this.classToKeys.get(classKey);
-            list.forEach(pair ->
+            ReferenceArraySet<ServerPlayer> viewers = this.entityViewers.remove(entity);
+            if(viewers != null && this.getLayout(entity.getClass()).hasVisibilityRules())
             {
-                SyncedDataKey<?, ?> syncedDataKey = keys.get(pair.getLeft());
-                if(syncedDataKey == null)
-                {
-                    missingKeys.add(Pair.of(classId, pair.getLeft()));
-                    return;
-                }
-                this.syncedIdToKey.put((int) pair.getRight(), syncedDataKey);
-            });
-        });
-
-        if(!missingKeys.isEmpty())
-        {
-            String keys = missingKeys.stream().map(Object::toString).collect(Collectors.joining(",", "[", "]"));
-            Constants.LOG.info(SYNCED_ENTITY_DATA_MARKER, "Received unknown synced keys: {}", keys);
+                viewers.forEach(viewer -> this.removeVisibilityMask(entity, viewer));
+            }
+            Reference2ObjectMap<ServerPlayer, DeferredEntityUpdates> deferred = this.deferredUpdates.remove(entity);
+            if(deferred != null)
+            {
+                deferred.values().forEach(this.pendingDeferredUpdates::remove);
+            }
+            Reference2ObjectMap<ServerPlayer, OnDemandSubscriptions> subscriptions = this.onDemandSubscriptions.remove(entity);
+            if(subscriptions != null)
+            {
+                subscriptions.values().forEach(this.pendingOnDemand::remove);
+            }
+        }
+    }
+
+    private void indexEntity(Entity entity, Level level)
+    {
+        DataHolder holder = this.getDataHolderIfPresent(entity);
+        if(holder == null)
+            return;
+
+        SyncedKeyLayout layout = holder.getLayout();
+        for(int slot = 0; slot < layout.size(); slot++)
+        {
+            DataEntry<?, ?> entry = holder.getEntry(slot);
+            if(entry != null && entry.getKey().indexed())
+            {
+                this.indexEntry(level, entity, entry);
+            }
+        }
+    }
+
+    private void unindexEntity(Entity entity, Level level)
+    {
+        SyncedKeyLayout layout = this.getLayout(entity.getClass());
+        for(int slot = 0; slot < layout.size(); slot++)
+        {
+            SyncedDataKey<?, ?> key = layout.getKey(slot);
+            if(!key.indexed())
+                continue;
+
+            SyncedKeyHandle handle = this.keyHandles.get(key);
+            SyncedKeyColumn column = handle.getColumn(level);
+            if(column != null)
+            {
+                column.remove(entity.getId());
+                if(column.size() == 0)
+                {
+                    handle.removeColumn(level);
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the index of a key after the value of an entry changed. Entities that are not yet in
+     * their level are indexed once they join it.
+     */
+    void updateIndex(Entity entity, DataEntry<?, ?> entry)
+    {
+        if(entity.level() instanceof ServerLevel level && level.getEntity(entity.getId()) == entity)
+        {
+            this.indexEntry(level, entity, entry);
+        }
+    }
+
+    private void indexEntry(Level level, Entity entity, DataEntry<?, ?> entry)
+    {
+        SyncedKeyHandle handle = this.keyHandles.get(entry.getKey());
+        if(!entry.isDefault())
+        {
+            handle.getOrCreateColumn(level, entry.isPrimitive()).put(entity.getId(), entry);
+            return;
+        }
+        SyncedKeyColumn column = handle.getColumn(level);
+        if(column != null)
+        {
+            column.remove(entity.getId());
+            if(column.size() == 0)
+            {
+                handle.removeColumn(level);
+            }
+        }
+    }
+
+    private void removeDeferredUpdates(Entity entity, ServerPlayer player)
+    {
+        Reference2ObjectMap<ServerPlayer, DeferredEntityUpdates> deferred = this.deferredUpdates.get(entity);
+        if(deferred != null)
+        {
+            DeferredEntityUpdates updates = deferred.remove(player);
+            if(updates != null)
+            {
+                this.pendingDeferredUpdates.remove(updates);
+            }
+            if(deferred.isEmpty())
+            {
+                this.deferredUpdates.remove(entity);
+            }
+        }
+    }
+
+    private void onPlayerClone(Player oldPlayer, Player newPlayer, boolean respawn)
+    {
+        if(oldPlayer instanceof ServerPlayer oldServerPlayer)
+        {
+            // The new player will be given new masks once it starts tracking entities
+            this.visibilityMasks.remove(oldServerPlayer);
+            this.staleVisibility.remove(oldServerPlayer);
+            this.removeOnDemandSubscriptions(oldServerPlayer);
+        }
+
+        if(!this.hasSyncedDataKey(newPlayer))
+            return;
+
+        DataHolder oldHolder = Services.ENTITY.getDataHolder(oldPlayer, true);
+        if(oldHolder == null)
+            return;
+
+        DataHolder newHolder = this.getDataHolder(newPlayer);
+        if(newHolder == null)
+            return;
+
+        newHolder.copyFrom(oldHolder, respawn);
+    }
+
+    /**
+     * Records the versions of the entries sent to a player for their own player entity
+     */
+    private void recordSentVersions(ServerPlayer player, List<DataEntry<?, ?>> entries)
+    {
+        Int2LongMap sentVersions = this.sentPlayerVersions.computeIfAbsent(player.getUUID(), uuid -> new Int2LongOpenHashMap());
+        for(DataEntry<?, ?> entry : entries)
+        {
+            sentVersions.put(this.getInternalId(entry.getKey()), entry.getVersion());
+        }
+    }
+
+    /**
+     * @return the next version for a changed entry. Versions are unique across all entries, so a
+     * recreated entry can never be mistaken for one that was previously sent.
+     */
+    long nextVersion()
+    {
+        return this.nextVersion.getAndIncrement();
+    }
+
+    /**
+     * Called on the client when the local player joins a level after respawning or changing
+     * dimension. The synced data held for the previous local player entity is copied into the new
+     * one, since the server will only send the entries that have changed.
+     *
+     * @param player the new local player entity
+     */
+    public void restoreLocalPlayerData(Player player)
+    {
+        DataHolder holder = this.getDataHolder(player);
+        if(holder == null)
+            return;
+
+        if(this.localPlayerHolder != null && this.localPlayerHolder != holder)
+        {
+            holder.copyFrom(this.localPlayerHolder, false);
+        }
+        this.localPlayerHolder = holder;
+    }
+
+    /**
+     * Called on the client after synced data is received for the local player, so the data can be
+     * restored once the player entity is recreated. See {@link #restoreLocalPlayerData(Player)}.
+     *
+     * @param player the local player entity
+     */
+    public void updateLocalPlayer(Player player)
+    {
+        this.localPlayerHolder = this.getDataHolderIfPresent(player);
+    }
+
+    private void onServerTickEnd(MinecraftServer server)
+    {
+        // Every update of the previous tick has been sent, so the ids of a full dictionary can be reused
+        this.stringDictionary.resetIfFull();
+
+        if(!this.pendingWrites.isEmpty())
+        {
+            this.applyPendingWrites(server);
+        }
+
+        // Expired subscriptions are otherwise only removed when their entity changes
+        if(server.getTickCount() % ON_DEMAND_PRUNE_INTERVAL == 0 && !this.onDemandSubscriptions.isEmpty())
+        {
+            this.pruneOnDemandSubscriptions(server.getTickCount());
+        }
+
+        if(this.dirtyEntities.isEmpty() && this.pendingSnapshots.isEmpty() && this.pendingDeferredUpdates.isEmpty() && this.staleVisibility.isEmpty() && this.pendingOnDemand.isEmpty())
+            return;
+
+        // Updates are grouped per receiving player, so each player gets a single message per tick
+        Reference2ObjectMap<ServerPlayer, EntityDataBatch> batches = new Reference2ObjectLinkedOpenHashMap<>();
+        List<DataEntry<?, ?>> sentEntries = new ArrayList<>();
+        int tick = server.getTickCount();
+        this.flushDirtyEntities(batches, sentEntries, tick);
+        this.flushDeferredUpdates(batches, tick);
+        this.refreshVisibility(batches);
+        this.flushOnDemandSubscriptions(batches);
+        this.flushPendingSnapshots(batches);
+
+        // Updates are encoded in parallel, then deltas can move on to the new values
+        this.encoder.encodeAll();
+        sentEntries.forEach(DataEntry::markSent);
+
+        batches.forEach((player, batch) ->
+        {
+            if(!player.hasDisconnected())
+            {
+                batch.send(player);
+            }
+        });
+    }
+
+    private void applyPendingWrites(MinecraftServer server)
+    {
+        Iterator<Map.Entry<ServerLevel, Queue<PendingWrite>>> iterator = this.pendingWrites.entrySet().iterator();
+        while(iterator.hasNext())
+        {
+            Map.Entry<ServerLevel, Queue<PendingWrite>> entry = iterator.next();
+            ServerLevel level = entry.getKey();
+            Queue<PendingWrite> queue = entry.getValue();
+            boolean loaded = server.getLevel(level.dimension()) == level;
+            PendingWrite write;
+            while((write = queue.poll()) != null)
+            {
+                // Writes are applied in the order they were queued, so the last write wins
+                Entity entity = write.entity();
+                if(loaded && !entity.isRemoved() && entity.level() == level)
+                {
+                    this.set(entity, write.key(), write.value());
+                }
+            }
+            if(!loaded)
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void flushDirtyEntities(Reference2ObjectMap<ServerPlayer, EntityDataBatch> batches, List<DataEntry<?, ?>> sentEntries, int tick)
+    {
+        List<Entity> rateLimited = new ArrayList<>();
+        for(Entity entity : this.dirtyEntities)
+        {
+            // Skip entities that were removed after being marked dirty
+            if(entity.isRemoved())
+                continue;
+
+            DataHolder holder = this.getDataHolder(entity);
+            if(holder == null || !holder.isDirty())
+                continue;
+
+            List<DataEntry<?, ?>> entries = holder.gatherDirty(tick);
+            if(holder.isDirty())
+            {
+                // Some keys are within their minimum sync interval, so try again next tick
+                rateLimited.add(entity);
+            }
+            if(entries.isEmpty())
+                continue;
+
+            this.sendDirtyEntries(entity, holder, entries, batches, tick);
+
+            // Deltas are written against the last sent value, even if the entity has no viewers. The
+            // entries are only marked once the queued updates have been encoded.
+            sentEntries.addAll(entries);
+        }
+        this.dirtyEntities.clear();
+        this.dirtyEntities.addAll(rateLimited);
+    }
+
+    private void sendDirtyEntries(Entity entity, DataHolder holder, List<DataEntry<?, ?>> entries, Reference2ObjectMap<ServerPlayer, EntityDataBatch> batches, int tick)
+    {
+        if(entity instanceof ServerPlayer player)
+        {
+            List<DataEntry<?, ?>> selfEntries = entries.stream().filter(entry -> entry.getKey().syncMode().isSelf()).collect(Collectors.toList());
+            if(!selfEntries.isEmpty())
+            {
+                this.getBatch(batches, player).add(this.encoder.queue(entity, selfEntries, hasBaselines(selfEntries, player)));
+                this.recordSentVersions(player, selfEntries);
+            }
+        }
+
+        ReferenceArraySet<ServerPlayer> viewers = this.entityViewers.get(entity);
+        if(viewers != null && !viewers.isEmpty())
+        {
+            List<DataEntry<?, ?>> trackingEntries = entries.stream().filter(entry -> entry.getKey().syncMode().isTracking()).collect(Collectors.toList());
+            if(!trackingEntries.isEmpty())
+            {
+                boolean tiered = trackingEntries.stream().anyMatch(entry -> entry.getKey().syncRate().hasDistanceTiers());
+                boolean restricted = holder.getLayout().hasVisibilityRules();
+
+                // Encoded once and shared between the batches of all viewers receiving every entry
+                PendingUpdate update = null;
+                for(ServerPlayer viewer : viewers)
+                {
+                    // Viewers still waiting for a snapshot of the entity will receive the changes with it
+                    ReferenceLinkedOpenHashSet<Entity> pending = this.pendingSnapshots.get(viewer);
+                    if(pending != null && pending.contains(entity))
+                        continue;
+
+                    List<DataEntry<?, ?>> viewerEntries = restricted ? this.filterVisible(entity, holder, viewer, trackingEntries) : trackingEntries;
+                    if(tiered)
+                    {
+                        viewerEntries = this.scheduleForViewer(entity, holder, viewer, viewerEntries, tick);
+                    }
+                    boolean delta = hasBaselines(viewerEntries, viewer);
+                    if(viewerEntries == trackingEntries && delta)
+                    {
+                        if(update == null)
+                        {
+                            update = this.encoder.queue(entity, trackingEntries, true);
+                        }
+                        this.getBatch(batches, viewer).add(update);
+                    }
+                    else if(!viewerEntries.isEmpty())
+                    {
+                        this.getBatch(batches, viewer).add(this.encoder.queue(entity, viewerEntries, delta));
+                    }
+                }
+            }
+        }
+
+        Reference2ObjectMap<ServerPlayer, OnDemandSubscriptions> subscriptions = this.onDemandSubscriptions.get(entity);
+        if(subscriptions != null)
+        {
+            this.sendOnDemandEntries(entity, holder, subscriptions, entries, batches, tick);
+        }
+    }
+
+    private void sendOnDemandEntries(Entity entity, DataHolder holder, Reference2ObjectMap<ServerPlayer, OnDemandSubscriptions> subscriptions, List<DataEntry<?, ?>> entries, Reference2ObjectMap<ServerPlayer, EntityDataBatch> batches, int tick)
+    {
+        List<DataEntry<?, ?>> onDemandEntries = entries.stream().filter(entry -> entry.getKey().syncMode().isOnDemand()).collect(Collectors.toList());
+        if(onDemandEntries.isEmpty())
+            return;
+
+        Iterator<OnDemandSubscriptions> iterator = subscriptions.values().iterator();
+        while(iterator.hasNext())
+        {
+            OnDemandSubscriptions subscription = iterator.next();
+            if(subscription.getViewer().hasDisconnected() || subscription.expire(tick))
+            {
+                this.pendingOnDemand.remove(subscription);
+                iterator.remove();
+                continue;
+            }
+
+            // Newly subscribed keys are skipped, as the full value is sent after the dirty updates
+            List<DataEntry<?, ?>> viewerEntries = new ArrayList<>();
+            for(DataEntry<?, ?> entry : onDemandEntries)
+            {
+                if(subscription.isSubscribed(holder.getSlot(entry.getKey()), tick))
+                {
+                    viewerEntries.add(entry);
+                }
+            }
+            if(!viewerEntries.isEmpty())
+            {
+                this.getBatch(batches, subscription.getViewer()).add(this.encoder.queue(entity, viewerEntries, hasBaselines(viewerEntries, subscription.getViewer())));
+            }
+        }
+        if(subscriptions.isEmpty())
+        {
+            this.onDemandSubscriptions.remove(entity);
+        }
+    }
+
+    /**
+     * Determines which of the changed entries should be sent to a viewer based on the distance
+     * tiers of their keys. Entries that are held back are recorded and sent by {@link #flushDeferredUpdates}
+     * once the interval for the viewer has passed.
+     *
+     * @return the entries to send now, or the given list if every entry should be sent
+     */
+    private List<DataEntry<?, ?>> scheduleForViewer(Entity entity, DataHolder holder, ServerPlayer viewer, List<DataEntry<?, ?>> entries, int tick)
+    {
+        double distanceSqr = viewer.distanceToSqr(entity);
+        List<DataEntry<?, ?>> result = null;
+        for(int i = 0; i < entries.size(); i++)
+        {
+            DataEntry<?, ?> entry = entries.get(i);
+            SyncRate rate = entry.getKey().syncRate();
+            boolean send = true;
+            if(rate.hasDistanceTiers())
+            {
+                DeferredEntityUpdates deferred = this.deferredUpdates.computeIfAbsent(entity, e -> new Reference2ObjectOpenHashMap<>()).computeIfAbsent(viewer, p -> new DeferredEntityUpdates(viewer, entity, holder.size()));
+                int slot = holder.getSlot(entry.getKey());
+                if(deferred.canSync(slot, tick))
+                {
+                    deferred.scheduleNextSync(slot, tick, rate.getInterval(distanceSqr));
+                }
+                else
+                {
+                    deferred.defer(slot);
+                    this.pendingDeferredUpdates.add(deferred);
+                    send = false;
+                }
+            }
+            if(!send && result == null)
+            {
+                result = new ArrayList<>(entries.subList(0, i));
+            }
+            else if(send && result != null)
+            {
+                result.add(entry);
+            }
+        }
+        return result != null ? result : entries;
+    }
+
+    private void flushDeferredUpdates(Reference2ObjectMap<ServerPlayer, EntityDataBatch> batches, int tick)
+    {
+        Iterator<DeferredEntityUpdates> iterator = this.pendingDeferredUpdates.iterator();
+        while(iterator.hasNext())
+        {
+            DeferredEntityUpdates deferred = iterator.next();
+            Entity entity = deferred.getEntity();
+            ServerPlayer viewer = deferred.getViewer();
+            DataHolder holder = !entity.isRemoved() && !viewer.hasDisconnected() ? this.getDataHolder(entity) : null;
+            if(holder == null || !deferred.hasPending())
+            {
+                iterator.remove();
+                continue;
+            }
+
+            List<DataEntry<?, ?>> entries = deferred.gatherReady(holder, tick);
+            if(holder.getLayout().hasVisibilityRules())
+            {
+                entries = this.filterVisible(entity, holder, viewer, entries);
+            }
+            if(!entries.isEmpty())
+            {
+                // The viewer may have missed deltas while the entries were deferred, so send full values
+                this.getBatch(batches, viewer).add(this.encoder.queue(entity, entries, false));
+                markSentFull(entries, viewer);
+            }
+            if(!deferred.hasPending())
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Evaluates the invalidated visibility masks again. Players that can now see a key receive the
+     * full value of it, since any changes made while it was hidden were not sent to them.
+     */
+    private void refreshVisibility(Reference2ObjectMap<ServerPlayer, EntityDataBatch> batches)
+    {
+        for(ServerPlayer viewer : this.staleVisibility)
+        {
+            Reference2ObjectMap<Entity, VisibilityMask> masks = this.visibilityMasks.get(viewer);
+            if(masks == null || viewer.hasDisconnected())
+                continue;
+
+            ReferenceLinkedOpenHashSet<Entity> pending = this.pendingSnapshots.get(viewer);
+            for(Reference2ObjectMap.Entry<Entity, VisibilityMask> maskEntry : masks.reference2ObjectEntrySet())
+            {
+                VisibilityMask mask = maskEntry.getValue();
+                if(!mask.isStale())
+                    continue;
+
+                Entity entity = maskEntry.getKey();
+                DataHolder holder = !entity.isRemoved() ? this.getDataHolderIfPresent(entity) : null;
+                if(holder == null)
+                {
+                    mask.refresh(entity, viewer, this.getLayout(entity.getClass()));
+                    continue;
+                }
+
+                IntList changedSlots = mask.refresh(entity, viewer, holder.getLayout());
+                if(changedSlots == null || (pending != null && pending.contains(entity)))
+                    continue;
+
+                // Newly visible keys are sent in full, even if default, since the viewer may hold a
+                // value from before the key was hidden. Hidden keys are reset to the default value.
+                List<DataEntry<?, ?>> entries = new ArrayList<>();
+                List<DataEntry<?, ?>> sentEntries = new ArrayList<>();
+                for(int i = 0; i < changedSlots.size(); i++)
+                {
+                    int slot = changedSlots.getInt(i);
+                    SyncedDataKey<?, ?> key = holder.getLayout().getKey(slot);
+                    if(!key.syncMode().isTracking())
+                        continue;
+
+                    DataEntry<?, ?> entry = mask.isVisible(slot) ? holder.getEntry(slot) : null;
+                    if(entry != null)
+                    {
+                        entries.add(entry);
+                        sentEntries.add(entry);
+                        continue;
+                    }
+                    entries.add(new DataEntry<>(key));
+                }
+                if(!entries.isEmpty())
+                {
+                    this.getBatch(batches, viewer).add(this.encoder.queue(entity, entries, false));
+                    markSentFull(sentEntries, viewer);
+                }
+            }
+        }
+        this.staleVisibility.clear();
+    }
+
+    /**
+     * Removes the entries of keys that the viewer is not allowed to see
+     *
+     * @return the visible entries, or the given list if every entry is visible
+     */
+    private List<DataEntry<?, ?>> filterVisible(Entity entity, DataHolder holder, ServerPlayer viewer, List<DataEntry<?, ?>> entries)
+    {
+        VisibilityMask mask = this.getVisibilityMask(entity, viewer, holder.getLayout());
+        List<DataEntry<?, ?>> result = null;
+        for(int i = 0; i < entries.size(); i++)
+        {
+            DataEntry<?, ?> entry = entries.get(i);
+            boolean visible = mask.isVisible(holder.getSlot(entry.getKey()));
+            if(!visible && result == null)
+            {
+                result = new ArrayList<>(entries.subList(0, i));
+            }
+            else if(visible && result != null)
+            {
+                result.add(entry);
+            }
+        }
+        return result != null ? result : entries;
+    }
+
+    private VisibilityMask getVisibilityMask(Entity entity, ServerPlayer viewer, SyncedKeyLayout layout)
+    {
+        return this.visibilityMasks.computeIfAbsent(viewer, p -> new Reference2ObjectOpenHashMap<>()).computeIfAbsent(entity, e -> new VisibilityMask(entity, viewer, layout));
+    }
+
+    private void removeVisibilityMask(Entity entity, Player viewer)
+    {
+        Reference2ObjectMap<Entity, VisibilityMask> masks = this.visibilityMasks.get(viewer);
+        if(masks != null && masks.remove(entity) != null && masks.isEmpty())
+        {
+            this.visibilityMasks.remove(viewer);
+        }
+    }
+
+    /**
+     * Invalidates the cached results of the visibility predicates of the keys of an entity for
+     * every player tracking it. Call this when something that a visibility predicate depends on
+     * has changed, for example the team of the entity. The predicates are evaluated again at the
+     * end of the tick.
+     *
+     * @param entity the entity to invalidate
+     */
+    public void invalidateVisibility(Entity entity)
+    {
+        ReferenceArraySet<ServerPlayer> viewers = this.entityViewers.get(entity);
+        if(viewers == null)
+            return;
+
+        for(ServerPlayer viewer : viewers)
+        {
+            Reference2ObjectMap<Entity, VisibilityMask> masks = this.visibilityMasks.get(viewer);
+            VisibilityMask mask = masks != null ? masks.get(entity) : null;
+            if(mask != null)
+            {
+                mask.markStale();
+                this.staleVisibility.add(viewer);
+            }
+        }
+    }
+
+    /**
+     * Invalidates the cached results of the visibility predicates of every entity tracked by the
+     * given player. Call this when something that a visibility predicate depends on has changed
+     * for the player, for example their permissions or team.
+     *
+     * @param viewer the player to invalidate
+     */
+    public void invalidateVisibilityFor(ServerPlayer viewer)
+    {
+        Reference2ObjectMap<Entity, VisibilityMask> masks = this.visibilityMasks.get(viewer);
+        if(masks != null && !masks.isEmpty())
+        {
+            masks.values().forEach(VisibilityMask::markStale);
+            this.staleVisibility.add(viewer);
+        }
+    }
+
+    private void flushOnDemandSubscriptions(Reference2ObjectMap<ServerPlayer, EntityDataBatch> batches)
+    {
+        for(OnDemandSubscriptions subscription : this.pendingOnDemand)
+        {
+            Entity entity = subscription.getEntity();
+            ServerPlayer viewer = subscription.getViewer();
+            if(entity.isRemoved() || viewer.hasDisconnected() || !subscription.hasPending())
+                continue;
+
+            // The viewer may hold an outdated value from an earlier subscription, so send full values
+            DataHolder holder = this.getDataHolderIfPresent(entity);
+            List<DataEntry<?, ?>> entries = subscription.gatherPending(this.getLayout(entity.getClass()), holder);
+            if(!entries.isEmpty())
+            {
+                this.getBatch(batches, viewer).add(this.encoder.queue(entity, entries, false));
+                markSentFull(entries, viewer);
+            }
+        }
+        this.pendingOnDemand.clear();
+    }
+
+    /**
+     * Handles a request from a player to subscribe to or unsubscribe from an on demand key of an
+     * entity. Players can only request keys of entities they are tracking or of themselves, and
+     * the visibility predicate of the key must pass for them.
+     *
+     * @param player  the player that sent the request
+     * @param message the request
+     */
+    public void handleOnDemandRequest(ServerPlayer player, C2SRequestEntityData message)
+    {
+        SyncedDataKey<?, ?> key = this.getKeyByHash(message.getKeyHash());
+        if(key == null || !key.syncMode().isOnDemand())
+            return;
+
+        Entity entity = player.level().getEntity(message.getEntityId());
+        if(entity == null || entity.isRemoved())
+            return;
+
+        SyncedKeyLayout layout = this.getLayout(entity.getClass());
+        int slot = layout.getSlot(this.getInternalId(key));
+        if(slot < 0)
+            return;
+
+        int tick = player.server.getTickCount();
+        if(!message.isSubscribe())
+        {
+            Reference2ObjectMap<ServerPlayer, OnDemandSubscriptions> subscriptions = this.onDemandSubscriptions.get(entity);
+            OnDemandSubscriptions subscription = subscriptions != null ? subscriptions.get(player) : null;
+            if(subscription != null)
+            {
+                subscription.unsubscribe(slot);
+                if(subscription.expire(tick))
+                {
+                    this.removeOnDemandSubscriptions(entity, player);
+                }
+            }
+            return;
+        }
+
+        if(entity != player)
+        {
+            ReferenceArraySet<ServerPlayer> viewers = this.entityViewers.get(entity);
+            if(viewers == null || !viewers.contains(player))
+                return;
+
+            if(layout.hasVisibilityRules() && !this.getVisibilityMask(entity, player, layout).isVisible(slot))
+                return;
+        }
+
+        OnDemandSubscriptions subscription = this.onDemandSubscriptions.computeIfAbsent(entity, e -> new Reference2ObjectOpenHashMap<>()).computeIfAbsent(player, p -> new OnDemandSubscriptions(player, entity));
+        if(subscription.subscribe(slot, tick, tick + this.onDemandTimeout))
+        {
+            this.pendingOnDemand.add(subscription);
+        }
+    }
+
+    /**
+     * Requests the value of an on demand key for an entity from the server, or releases the
+     * subscription for it. This can only be called on the client.
+     *
+     * @param entity    the entity holding the value
+     * @param key       the on demand key
+     * @param subscribe true to subscribe to the key or renew the subscription, false to release it
+     */
+    public void requestOnDemand(Entity entity, SyncedDataKey<?, ?> key, boolean subscribe)
+    {
+        Validate.isTrue(key.syncMode().isOnDemand(), "Synced data key %s does not use the on demand sync mode", key.id());
+        Validate.validState(entity.level().isClientSide(), "On demand synced data can only be requested on the client");
+        Network.getPlayChannel().sendToServer(new C2SRequestEntityData(entity.getId(), getKeyHash(key), subscribe));
+    }
+
+    /**
+     * Sets the amount of ticks a subscription to an on demand key lasts before the client has to
+     * request the key again. The default can be changed with the system property
+     * "framework.onDemandTimeout".
+     *
+     * @param ticks the timeout in ticks
+     */
+    public void setOnDemandTimeout(int ticks)
+    {
+        Validate.isTrue(ticks > 0, "The on demand timeout must be greater than zero");
+        this.onDemandTimeout = ticks;
+    }
+
+    @Nullable
+    private SyncedDataKey<?, ?> getKeyByHash(long hash)
+    {
+        Long2ReferenceMap<SyncedDataKey<?, ?>> keys = this.keysByHash;
+        if(keys == null)
+        {
+            keys = new Long2ReferenceOpenHashMap<>();
+            for(SyncedDataKey<?, ?> key : this.registeredDataKeys)
+            {
+                keys.put(getKeyHash(key), key);
+            }
+            this.keysByHash = keys;
+        }
+        return keys.get(hash);
+    }
+
+    private void removeOnDemandSubscriptions(Entity entity, Player viewer)
+    {
+        Reference2ObjectMap<ServerPlayer, OnDemandSubscriptions> subscriptions = this.onDemandSubscriptions.get(entity);
+        if(subscriptions != null)
+        {
+            OnDemandSubscriptions subscription = subscriptions.remove(viewer);
+            if(subscription != null)
+            {
+                this.pendingOnDemand.remove(subscription);
+            }
+            if(subscriptions.isEmpty())
+            {
+                this.onDemandSubscriptions.remove(entity);
+            }
+        }
+    }
+
+    /**
+     * Removes the subscriptions that have expired or whose viewer has disconnected
+     */
+    private void pruneOnDemandSubscriptions(int tick)
+    {
+        Iterator<Reference2ObjectMap<ServerPlayer, OnDemandSubscriptions>> iterator = this.onDemandSubscriptions.values().iterator();
+        while(iterator.hasNext())
+        {
+            Reference2ObjectMap<ServerPlayer, OnDemandSubscriptions> subscriptions = iterator.next();
+            subscriptions.values().removeIf(subscription -> {
+                if(subscription.getViewer().hasDisconnected() || subscription.expire(tick))
+                {
+                    this.pendingOnDemand.remove(subscription);
+                    return true;
+                }
+                return false;
+            });
+            if(subscriptions.isEmpty())
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void removeOnDemandSubscriptions(Player viewer)
+    {
+        Iterator<Reference2ObjectMap<ServerPlayer, OnDemandSubscriptions>> iterator = this.onDemandSubscriptions.values().iterator();
+        while(iterator.hasNext())
+        {
+            Reference2ObjectMap<ServerPlayer, OnDemandSubscriptions> subscriptions = iterator.next();
+            OnDemandSubscriptions subscription = subscriptions.remove(viewer);
+            if(subscription != null)
+            {
+                this.pendingOnDemand.remove(subscription);
+            }
+            if(subscriptions.isEmpty())
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void flushPendingSnapshots(Reference2ObjectMap<ServerPlayer, EntityDataBatch> batches)
+    {
+        Iterator<Reference2ObjectMap.Entry<ServerPlayer, ReferenceLinkedOpenHashSet<Entity>>> playerIterator = this.pendingSnapshots.reference2ObjectEntrySet().iterator();
+        while(playerIterator.hasNext())
+        {
+            Reference2ObjectMap.Entry<ServerPlayer, ReferenceLinkedOpenHashSet<Entity>> playerEntry = playerIterator.next();
+            ServerPlayer player = playerEntry.getKey();
+            ReferenceLinkedOpenHashSet<Entity> pending = playerEntry.getValue();
+            int usedBytes = 0;
+            Iterator<Entity> entityIterator = pending.iterator();
+            while(entityIterator.hasNext())
+            {
+                Entity entity = entityIterator.next();
+                DataHolder holder = !entity.isRemoved() ? this.getDataHolderIfPresent(entity) : null;
+                if(holder == null)
+                {
+                    entityIterator.remove();
+                    continue;
+                }
+
+                List<DataEntry<?, ?>> entries = holder.gatherAll();
+                entries.removeIf(entry -> !entry.getKey().syncMode().isTracking());
+                if(holder.getLayout().hasVisibilityRules())
+                {
+                    entries = this.filterVisible(entity, holder, player, entries);
+                }
+                if(entries.isEmpty())
+                {
+                    entityIterator.remove();
+                    continue;
+                }
+
+                // Remaining snapshots spill into the next tick once the budget is used up
+                EncodedUpdate update = this.encodeUpdate(entity, entries, false);
+                if(usedBytes > 0 && usedBytes + update.size() > this.initialSyncBudget)
+                    break;
+
+                this.getBatch(batches, player).add(PendingUpdate.of(update));
+                markSentFull(entries, player);
+                usedBytes += update.size();
+                entityIterator.remove();
+            }
+            if(pending.isEmpty())
+            {
+                playerIterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Records that the full values of the entries were sent to a viewer outside of a dirty update,
+     * see {@link DataEntry#markSentFull(ServerPlayer)}
+     */
+    private static void markSentFull(List<DataEntry<?, ?>> entries, ServerPlayer viewer)
+    {
+        for(int i = 0; i < entries.size(); i++)
+        {
+            entries.get(i).markSentFull(viewer);
+        }
+    }
+
+    /**
+     * @return true if the viewer holds the value last sent of every entry, so deltas can be written
+     */
+    private static boolean hasBaselines(List<DataEntry<?, ?>> entries, ServerPlayer viewer)
+    {
+        for(int i = 0; i < entries.size(); i++)
+        {
+            if(!entries.get(i).hasBaseline(viewer))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private EncodedUpdate encodeUpdate(Entity entity, List<DataEntry<?, ?>> entries, boolean delta)
+    {
+        FriendlyByteBuf buffer = new FriendlyByteBuf(Unpooled.buffer());
+        int[] strings;
+        this.stringDictionary.startRecording();
+        try
+        {
+            S2CUpdateEntityData.writeUpdate(buffer, entity.getId(), entries, delta);
+        }
+        finally
+        {
+            strings = this.stringDictionary.stopRecording();
+        }
+        return new EncodedUpdate(buffer, strings);
+    }
+
+    private EntityDataBatch getBatch(Reference2ObjectMap<ServerPlayer, EntityDataBatch> batches, ServerPlayer player)
+    {
+        return batches.computeIfAbsent(player, p -> new EntityDataBatch(this.stringDictionary, this.stringDictionary.getKnownIds(player)));
+    }
+
+    /**
+     * @return the dictionary used by the dictionary serializers of synced data
+     */
+    public SyncedStringDictionary getStringDictionary()
+    {
+        return this.stringDictionary;
+    }
+
+    /**
+     * Updates the internal ids used to decode synced data received from the server. If the
+     * fingerprint of the server matches the local key table, the local ids are used as is.
+     *
+     * @param message the key table received from the server
+     * @return false if the server has keys that are not registered on the client
+     */
+    public boolean updateMappings(S2CSyncedEntityData message)
+    {
+        this.syncedIdToKey.clear();
+        this.stringDictionary.clearReceived();
+        this.localPlayerHolder = null;
+        if(message.getFingerprint() == this.getKeyTableFingerprint())
+        {
+            this.registeredDataKeys.forEach(key -> this.syncedIdToKey.put(this.getInternalId(key), key));
+            return true;
+        }
+
+        Long2ReferenceMap<SyncedDataKey<?, ?>> keysByHash = new Long2ReferenceOpenHashMap<>();
+        this.registeredDataKeys.forEach(key -> keysByHash.put(getKeyHash(key), key));
+
+        List<String> missingKeys = new ArrayList<>();
+        message.getKeyHashes().int2LongEntrySet().forEach(entry ->
+        {
+            SyncedDataKey<?, ?> syncedDataKey = keysByHash.get(entry.getLongValue());
+            if(syncedDataKey == null)
+            {
+                missingKeys.add(Long.toHexString(entry.getLongValue()));
+                return;
+            }
+            this.syncedIdToKey.put(entry.getIntKey(), syncedDataKey);
+        });
+
+        if(!missingKeys.isEmpty())
+        {
+            String keys = missingKeys.stream().collect(Collectors.joining(",", "[", "]"));
+            Constants.LOG.info(SYNCED_ENTITY_DATA_MARKER, "Received unknown synced keys with hashes: {}", keys);
         }
 
         return missingKeys.isEmpty();
     }
+
+    /**
+     * Gets the fingerprint of the key table. Two tables have the same fingerprint if they contain
+     * the same keys with the same internal ids.
+     */
+    public long getKeyTableFingerprint()
+    {
+        OptionalLong fingerprint = this.keyTableFingerprint;
+        if(fingerprint.isEmpty())
+        {
+            Hasher hasher = Hashing.murmur3_128().newHasher();
+            this.registeredDataKeys.stream().sorted(Comparator.comparingInt(this::getInternalId)).forEach(key -> {
+                hasher.putInt(this.getInternalId(key));
+                hasher.putLong(getKeyHash(key));
+            });
+            fingerprint = OptionalLong.of(hasher.hash().asLong());
+            this.keyTableFingerprint = fingerprint;
+        }
+        return fingerprint.getAsLong();
+    }
+
+    /**
+     * @return a 64-bit hash of the class key id and the id of the synced data key
+     */
+    public static long getKeyHash(SyncedDataKey<?, ?> key)
+    {
+        return KeyHashes.hash(key.classKey().id().toString(), key.id());
+    }
 }
\ No newline at end of file
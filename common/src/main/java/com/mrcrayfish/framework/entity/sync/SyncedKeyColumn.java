@@ -0,0 +1,122 @@
+package com.mrcrayfish.framework.entity.sync;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+import java.util.Arrays;
+
+/**
+ * A column of an indexed synced data key for a single level. The column contains the ids of the
+ * entities that hold a non-default value for the key, stored in dense arrays alongside their
+ * values. Primitive values are stored as bits. This allows all the entities with a value to be
+ * visited without iterating every loaded entity. Entities are not referenced, so they must be
+ * looked up by id from the level.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class SyncedKeyColumn
+{
+    private final Int2IntMap indices = new Int2IntOpenHashMap();
+    private final boolean primitive;
+    private int[] ids = new int[16];
+    private long[] bits;
+    private Object[] values;
+    private int size;
+
+    SyncedKeyColumn(boolean primitive)
+    {
+        this.indices.defaultReturnValue(-1);
+        this.primitive = primitive;
+        this.bits = primitive ? new long[16] : null;
+        this.values = primitive ? null : new Object[16];
+    }
+
+    void put(int entityId, DataEntry<?, ?> entry)
+    {
+        int index = this.indices.get(entityId);
+        if(index == -1)
+        {
+            if(this.size == this.ids.length)
+            {
+                this.grow();
+            }
+            index = this.size++;
+            this.ids[index] = entityId;
+            this.indices.put(entityId, index);
+        }
+        if(this.primitive)
+        {
+            this.bits[index] = entry.getBits();
+        }
+        else
+        {
+            this.values[index] = entry.getValue();
+        }
+    }
+
+    private void grow()
+    {
+        int length = this.ids.length * 2;
+        this.ids = Arrays.copyOf(this.ids, length);
+        if(this.primitive)
+        {
+            this.bits = Arrays.copyOf(this.bits, length);
+        }
+        else
+        {
+            this.values = Arrays.copyOf(this.values, length);
+        }
+    }
+
+    void remove(int entityId)
+    {
+        int index = this.indices.remove(entityId);
+        if(index == -1)
+            return;
+
+        // Swaps the last element into the removed index to keep the arrays dense
+        int last = --this.size;
+        if(index != last)
+        {
+            this.ids[index] = this.ids[last];
+            if(this.primitive)
+            {
+                this.bits[index] = this.bits[last];
+            }
+            else
+            {
+                this.values[index] = this.values[last];
+            }
+            this.indices.put(this.ids[index], index);
+        }
+        if(!this.primitive)
+        {
+            this.values[last] = null;
+        }
+    }
+
+    int size()
+    {
+        return this.size;
+    }
+
+    boolean isPrimitive()
+    {
+        return this.primitive;
+    }
+
+    int getEntityId(int index)
+    {
+        return this.ids[index];
+    }
+
+    long getBits(int index)
+    {
+        return this.bits[index];
+    }
+
+    Object getValue(int index)
+    {
+        return this.values[index];
+    }
+}
@@ -0,0 +1,74 @@
+package com.mrcrayfish.framework.entity.sync;
+
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nullable;
+
+/**
+ * Internal state of a synced data key that is created when the key is registered. Handles are
+ * held by {@link SyncedEntityData} rather than the key, so they are not part of the API.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class SyncedKeyHandle
+{
+    private final int internalId;
+    @Nullable
+    private final Reference2ObjectMap<ResourceKey<Level>, SyncedKeyColumn> columns;
+
+    /**
+     * @param internalId the internal id of the key
+     * @param indexed    if true, the entities holding a non-default value of the key are indexed per level
+     */
+    SyncedKeyHandle(int internalId, boolean indexed)
+    {
+        this.internalId = internalId;
+        this.columns = indexed ? new Reference2ObjectOpenHashMap<>() : null;
+    }
+
+    int getInternalId()
+    {
+        return this.internalId;
+    }
+
+    /**
+     * Columns are keyed by dimension rather than level, so unloaded levels are not kept in memory.
+     */
+    @Nullable
+    SyncedKeyColumn getColumn(Level level)
+    {
+        return this.columns != null ? this.columns.get(level.dimension()) : null;
+    }
+
+    SyncedKeyColumn getOrCreateColumn(Level level, boolean primitive)
+    {
+        Validate.validState(this.columns != null, "Synced key is not indexed");
+        return this.columns.computeIfAbsent(level.dimension(), l -> new SyncedKeyColumn(primitive));
+    }
+
+    void removeColumn(Level level)
+    {
+        if(this.columns != null)
+        {
+            this.columns.remove(level.dimension());
+        }
+    }
+
+    void clearColumns()
+    {
+        if(this.columns != null)
+        {
+            this.columns.clear();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SyncedKeyHandle[internalId=" + this.internalId + ", indexed=" + (this.columns != null) + "]";
+    }
+}
@@ -0,0 +1,130 @@
+package com.mrcrayfish.framework.entity.sync;
+
+import com.mrcrayfish.framework.api.sync.SyncedDataKey;
+import net.minecraft.world.entity.Entity;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A precomputed layout of every synced data key that applies to a concrete entity class, which
+ * includes the keys registered to any of its superclasses. A {@link DataHolder} stores its entries
+ * in a dense array and uses the layout to resolve the internal id of a key into a slot of that
+ * array, avoiding any hashing when getting or setting values.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class SyncedKeyLayout
+{
+    static final SyncedKeyLayout EMPTY = new SyncedKeyLayout(new SyncedDataKey<?, ?>[0], new int[0], new long[0]);
+
+    private final SyncedDataKey<?, ?>[] keys;
+    private final int[] slots;
+    private final long[] defaultBits;
+    private final boolean indexed;
+    private final boolean restricted;
+
+    private SyncedKeyLayout(SyncedDataKey<?, ?>[] keys, int[] slots, long[] defaultBits)
+    {
+        this.keys = keys;
+        this.slots = slots;
+        this.defaultBits = defaultBits;
+        this.indexed = Arrays.stream(keys).anyMatch(SyncedDataKey::indexed);
+        this.restricted = Arrays.stream(keys).anyMatch(key -> key.visibility() != null);
+    }
+
+    /**
+     * Creates a layout from the given keys and their internal ids. The slot of a key will be its
+     * index in the given list.
+     *
+     * @param keys        the keys that apply to the entity class
+     * @param internalIds the internal id of each key, in the same order as the keys
+     * @return a new layout instance
+     */
+    static SyncedKeyLayout create(List<SyncedDataKey<?, ?>> keys, int[] internalIds)
+    {
+        if(keys.isEmpty())
+            return EMPTY;
+
+        int maxId = Arrays.stream(internalIds).max().orElse(-1);
+        int[] slots = new int[maxId + 1];
+        Arrays.fill(slots, -1);
+        for(int slot = 0; slot < internalIds.length; slot++)
+        {
+            slots[internalIds[slot]] = slot;
+        }
+        long[] defaultBits = new long[keys.size()];
+        for(int slot = 0; slot < defaultBits.length; slot++)
+        {
+            defaultBits[slot] = SyncedEntityData.instance().getDefaultBits(keys.get(slot));
+        }
+        return new SyncedKeyLayout(keys.toArray(new SyncedDataKey<?, ?>[0]), slots, defaultBits);
+    }
+
+    int size()
+    {
+        return this.keys.length;
+    }
+
+    boolean isEmpty()
+    {
+        return this.keys.length == 0;
+    }
+
+    /**
+     * @return true if any of the keys in this layout are indexed
+     */
+    boolean hasIndexedKeys()
+    {
+        return this.indexed;
+    }
+
+    /**
+     * @return true if any of the keys in this layout have a visibility predicate
+     */
+    boolean hasVisibilityRules()
+    {
+        return this.restricted;
+    }
+
+    SyncedDataKey<?, ?> getKey(int slot)
+    {
+        return this.keys[slot];
+    }
+
+    /**
+     * @return the bits of the default value of the key in the slot, or zero if the key does not use
+     * a primitive serializer
+     */
+    long getDefaultBits(int slot)
+    {
+        return this.defaultBits[slot];
+    }
+
+    /**
+     * @param internalId the internal id of a synced data key
+     * @return the slot of the key or -1 if the key does not apply to this layout
+     */
+    int getSlot(int internalId)
+    {
+        return internalId >= 0 && internalId < this.slots.length ? this.slots[internalId] : -1;
+    }
+
+    /**
+     * Gets the slot of a key used on an entity of this layout
+     *
+     * @param key         a registered synced data key
+     * @param entityClass the class of the entity the key is used on
+     * @return the slot of the key
+     * @throws IllegalArgumentException if the key does not apply to the entity class
+     */
+    int getSlot(SyncedDataKey<?, ?> key, Class<? extends Entity> entityClass)
+    {
+        int slot = this.getSlot(SyncedEntityData.instance().getInternalId(key));
+        if(slot == -1)
+        {
+            throw new IllegalArgumentException(String.format("The synced data key %s for %s does not apply to %s", key.id(), key.classKey().id(), entityClass.getName()));
+        }
+        return slot;
+    }
+}
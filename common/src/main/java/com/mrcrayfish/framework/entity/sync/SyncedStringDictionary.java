@@ -0,0 +1,199 @@
+package com.mrcrayfish.framework.entity.sync;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.server.level.ServerPlayer;
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A dictionary of strings used by the dictionary serializers of synced data. The server assigns
+ * each string an id the first time it's written, and every player is sent the string only once
+ * before an update that uses its id. After that, the string is referenced by its id only, which
+ * makes keys switching between a small set of identifiers very cheap to sync.
+ * <p>
+ * The ids are server wide, so an update can still be encoded once and shared between players. The
+ * strings written while an update is encoded are recorded, which allows the batch of each player
+ * to include the strings that player has not received yet. Strings written outside of an update,
+ * for example when a message containing entries is sent directly, are written in full instead.
+ * <p>
+ * The dictionary holds at most a fixed amount of strings, which can be changed with the system
+ * property "framework.syncDictionarySize". Once it is full, new strings are written in full until
+ * the end of the tick, then the dictionary starts over with new ids and players are sent the
+ * strings again as they are used. The dictionary is also cleared when the server stops.
+ * <p>
+ * Author: MrCrayfish
+ */
+public final class SyncedStringDictionary
+{
+    private static final int INLINE = 0;
+    private static final int MAX_STRINGS = Integer.getInteger("framework.syncDictionarySize", 4096);
+
+    private final Object2IntMap<String> ids = new Object2IntOpenHashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final ThreadLocal<IntArrayList> recording = new ThreadLocal<>();
+    private final Map<UUID, IntSet> knownIds = new Object2ObjectOpenHashMap<>();
+    private final Int2ObjectMap<String> received = new Int2ObjectOpenHashMap<>();
+    private boolean full;
+
+    SyncedStringDictionary() {}
+
+    /**
+     * Writes a string to the buffer. If an update is being encoded and the string is in the
+     * dictionary, only the id of the string is written, otherwise the full string is written.
+     *
+     * @param buf   the buffer to write to
+     * @param value the string to write
+     */
+    public void write(FriendlyByteBuf buf, String value)
+    {
+        IntArrayList recorded = this.recording.get();
+        int id = recorded != null ? this.getOrCreateId(value) : -1;
+        if(id == -1)
+        {
+            buf.writeVarInt(INLINE);
+            buf.writeUtf(value);
+            return;
+        }
+        recorded.add(id);
+        buf.writeVarInt(id + 1);
+    }
+
+    /**
+     * Reads a string written by {@link #write(FriendlyByteBuf, String)}
+     *
+     * @param buf the buffer to read from
+     * @return the string
+     */
+    public String read(FriendlyByteBuf buf)
+    {
+        int id = buf.readVarInt();
+        if(id == INLINE)
+        {
+            return buf.readUtf();
+        }
+        synchronized(this.received)
+        {
+            String value = this.received.get(id - 1);
+            Validate.validState(value != null, "Received unknown dictionary string id %s", id - 1);
+            return value;
+        }
+    }
+
+    /**
+     * @return the id of the string, or -1 if the string is not in the dictionary and it is full
+     */
+    private synchronized int getOrCreateId(String value)
+    {
+        int id = this.ids.getOrDefault(value, -1);
+        if(id == -1)
+        {
+            if(this.strings.size() >= MAX_STRINGS)
+            {
+                this.full = true;
+                return -1;
+            }
+            id = this.strings.size();
+            this.strings.add(value);
+            this.ids.put(value, id);
+        }
+        return id;
+    }
+
+    synchronized String getString(int id)
+    {
+        return this.strings.get(id);
+    }
+
+    /**
+     * Starts recording the ids of the strings written on the current thread
+     */
+    void startRecording()
+    {
+        this.recording.set(new IntArrayList());
+    }
+
+    /**
+     * Stops recording on the current thread
+     *
+     * @return the ids of the strings written since recording started, or null if none were written
+     */
+    @Nullable
+    int[] stopRecording()
+    {
+        IntArrayList recorded = this.recording.get();
+        this.recording.remove();
+        return recorded != null && !recorded.isEmpty() ? recorded.toIntArray() : null;
+    }
+
+    /**
+     * @return the ids of the strings that the given player has been sent
+     */
+    IntSet getKnownIds(ServerPlayer player)
+    {
+        return this.knownIds.computeIfAbsent(player.getUUID(), uuid -> new IntOpenHashSet());
+    }
+
+    void removePlayer(UUID uuid)
+    {
+        this.knownIds.remove(uuid);
+    }
+
+    /**
+     * Starts over if a string could not be added because the dictionary is full. This must only be
+     * called when no update is being encoded and every encoded update has been sent. Clients replace
+     * the string of an id when they receive it again, so the ids can be reused.
+     */
+    synchronized void resetIfFull()
+    {
+        if(this.full)
+        {
+            this.clear();
+        }
+    }
+
+    /**
+     * Clears the strings of the server and the ids sent to players. Called when the server stops.
+     */
+    synchronized void clear()
+    {
+        this.ids.clear();
+        this.strings.clear();
+        this.knownIds.clear();
+        this.full = false;
+    }
+
+    /**
+     * Stores a string received from the server
+     */
+    public void receive(int id, String value)
+    {
+        synchronized(this.received)
+        {
+            this.received.put(id, value);
+        }
+    }
+
+    /**
+     * Clears the strings received from the server. Called when connecting to a server.
+     */
+    void clearReceived()
+    {
+        synchronized(this.received)
+        {
+            this.received.clear();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.mrcrayfish.framework.entity.sync;
+
+import com.mrcrayfish.framework.Constants;
+import net.minecraft.world.entity.Entity;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes the entity data updates planned during the tick end flush. By default every update is
+ * encoded on the server thread. Parallel encoding is opt-in with the system property
+ * "framework.syncEncoderThreads", since it runs the serializers of every key on worker threads, so
+ * they must be safe to call from any thread. When enabled, queued updates are split into slices
+ * regardless of their level, which are encoded in parallel on a small pool of worker threads, with
+ * the server thread encoding the first slice itself. The server thread waits for the encoding to
+ * finish, so values can't change while they are read and no copies of them are needed.
+ * <p>
+ * If a slice fails to encode on a worker thread, it is encoded again on the server thread. An
+ * update that fails to encode on the server thread is logged and not sent.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class UpdateEncoder
+{
+    private static final int THREADS = Integer.getInteger("framework.syncEncoderThreads", 0);
+    private static final int MIN_SLICE_SIZE = 64;
+
+    private final Encoder encoder;
+    private final List<PendingUpdate> queued = new ArrayList<>();
+    @Nullable
+    private ExecutorService executor;
+
+    UpdateEncoder(Encoder encoder)
+    {
+        this.encoder = encoder;
+    }
+
+    /**
+     * Queues an update to be encoded by {@link #encodeAll()}
+     *
+     * @param entity  the entity of the update
+     * @param entries the entries to write
+     * @param delta   if true, entries using a delta serializer will write a delta if possible
+     * @return the pending update, which can be added to batches straight away
+     */
+    PendingUpdate queue(Entity entity, List<DataEntry<?, ?>> entries, boolean delta)
+    {
+        PendingUpdate update = new PendingUpdate(entity, entries, delta);
+        this.queued.add(update);
+        return update;
+    }
+
+    /**
+     * Encodes every queued update and waits until all of them are encoded
+     */
+    void encodeAll()
+    {
+        if(this.queued.isEmpty())
+            return;
+
+        try
+        {
+            int size = this.queued.size();
+            int sliceSize = THREADS > 0 ? Math.max(MIN_SLICE_SIZE, (size + THREADS) / (THREADS + 1)) : size;
+            if(size <= sliceSize)
+            {
+                this.encode(this.queued);
+                return;
+            }
+
+            ExecutorService executor = this.getExecutor();
+            List<List<PendingUpdate>> slices = new ArrayList<>();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for(int start = sliceSize; start < size; start += sliceSize)
+            {
+                List<PendingUpdate> slice = this.queued.subList(start, Math.min(start + sliceSize, size));
+                slices.add(slice);
+                futures.add(this.submit(slice, executor));
+            }
+            this.encode(this.queued.subList(0, sliceSize));
+            for(int i = 0; i < futures.size(); i++)
+            {
+                try
+                {
+                    futures.get(i).join();
+                }
+                catch(CompletionException | CancellationException e)
+                {
+                    Constants.LOG.error("Failed to encode synced entity data off the server thread, encoding on the server thread instead", e.getCause() != null ? e.getCause() : e);
+                    this.encode(slices.get(i)); // Updates that were already encoded are skipped
+                }
+            }
+        }
+        finally
+        {
+            this.queued.clear();
+        }
+    }
+
+    private CompletableFuture<Void> submit(List<PendingUpdate> updates, ExecutorService executor)
+    {
+        try
+        {
+            return CompletableFuture.runAsync(() -> this.encodeUnchecked(updates), executor);
+        }
+        catch(RejectedExecutionException e)
+        {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Encodes the updates on the server thread. Failures are logged, so an update that can't be
+     * encoded doesn't prevent the other updates from being sent.
+     */
+    private void encode(List<PendingUpdate> updates)
+    {
+        for(int i = 0; i < updates.size(); i++)
+        {
+            PendingUpdate update = updates.get(i);
+            try
+            {
+                update.encode(this.encoder);
+            }
+            catch(RuntimeException e)
+            {
+                Constants.LOG.error("Failed to encode synced entity data of {}", update.getEntity(), e);
+            }
+        }
+    }
+
+    private void encodeUnchecked(List<PendingUpdate> updates)
+    {
+        for(int i = 0; i < updates.size(); i++)
+        {
+            updates.get(i).encode(this.encoder);
+        }
+    }
+
+    /**
+     * Shuts down the worker threads. They are started again if more updates need to be encoded.
+     */
+    void shutdown()
+    {
+        if(this.executor != null)
+        {
+            this.executor.shutdown();
+            this.executor = null;
+        }
+    }
+
+    private ExecutorService getExecutor()
+    {
+        if(this.executor == null)
+        {
+            AtomicInteger count = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(THREADS, runnable ->
+            {
+                Thread thread = new Thread(runnable, "Framework Sync Encoder #" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setUncaughtExceptionHandler((t, e) -> Constants.LOG.error("Uncaught exception in {}", t.getName(), e));
+                return thread;
+            });
+        }
+        return this.executor;
+    }
+
+    @FunctionalInterface
+    interface Encoder
+    {
+        EncodedUpdate encode(Entity entity, List<DataEntry<?, ?>> entries, boolean delta);
+    }
+}
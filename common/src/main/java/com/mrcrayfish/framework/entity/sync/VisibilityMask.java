@@ -0,0 +1,72 @@
+package com.mrcrayfish.framework.entity.sync;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.Entity;
+
+import javax.annotation.Nullable;
+import java.util.function.BiPredicate;
+
+/**
+ * The cached results of the visibility predicates of the keys of an entity for a single player
+ * tracking it. Each slot of the layout of the entity has a bit, and keys without a predicate are
+ * always visible. The mask is only evaluated again after it has been invalidated.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class VisibilityMask
+{
+    private final long[] bits;
+    private boolean stale;
+
+    VisibilityMask(Entity entity, ServerPlayer viewer, SyncedKeyLayout layout)
+    {
+        this.bits = new long[(layout.size() + 63) >> 6];
+        this.refresh(entity, viewer, layout);
+    }
+
+    boolean isVisible(int slot)
+    {
+        return (this.bits[slot >> 6] & (1L << slot)) != 0;
+    }
+
+    boolean isStale()
+    {
+        return this.stale;
+    }
+
+    void markStale()
+    {
+        this.stale = true;
+    }
+
+    /**
+     * Evaluates the visibility predicates of the keys again
+     *
+     * @return the slots of the keys that became visible or hidden, or null if none did. Use
+     * {@link #isVisible(int)} to tell them apart.
+     */
+    @Nullable
+    IntList refresh(Entity entity, ServerPlayer viewer, SyncedKeyLayout layout)
+    {
+        IntList changed = null;
+        for(int slot = 0; slot < layout.size(); slot++)
+        {
+            BiPredicate<Entity, ServerPlayer> predicate = layout.getKey(slot).visibility();
+            boolean result = predicate == null || predicate.test(entity, viewer);
+            boolean previous = this.isVisible(slot);
+            if(result == previous)
+                continue;
+
+            this.bits[slot >> 6] ^= 1L << slot;
+            if(changed == null)
+            {
+                changed = new IntArrayList();
+            }
+            changed.add(slot);
+        }
+        this.stale = false;
+        return changed;
+    }
+}
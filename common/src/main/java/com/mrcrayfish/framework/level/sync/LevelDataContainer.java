@@ -0,0 +1,175 @@
+package com.mrcrayfish.framework.level.sync;
+
+import com.mrcrayfish.framework.api.sync.IDataSerializer;
+import com.mrcrayfish.framework.api.sync.SyncedDataKey;
+import com.mrcrayfish.framework.api.sync.SyncedLevelDataKey;
+import com.mrcrayfish.framework.sync.ValueSlots;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.world.level.saveddata.SavedData;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Holds the values of synced level data keys of a single scope, either of a level or of the whole
+ * server. On the server it is stored in the saved data of the level, so keys that should be saved
+ * are written with the level.
+ * <p>
+ * Author: MrCrayfish
+ */
+final class LevelDataContainer extends SavedData
+{
+    private final SyncedLevelDataKey<?>[] keys;
+    private final ValueSlots slots;
+
+    LevelDataContainer(List<SyncedLevelDataKey<?>> keys)
+    {
+        this.keys = keys.toArray(new SyncedLevelDataKey<?>[0]);
+        IDataSerializer<?>[] serializers = new IDataSerializer<?>[this.keys.length];
+        for(int slot = 0; slot < this.keys.length; slot++)
+        {
+            serializers[slot] = this.keys[slot].serializer();
+        }
+        this.slots = new ValueSlots(serializers);
+        this.reset();
+    }
+
+    static LevelDataContainer load(List<SyncedLevelDataKey<?>> keys, CompoundTag tag)
+    {
+        LevelDataContainer container = new LevelDataContainer(keys);
+        for(int slot = 0; slot < container.keys.length; slot++)
+        {
+            SyncedLevelDataKey<?> key = container.keys[slot];
+            Tag value = tag.get(key.id().toString());
+            if(key.save() && value != null)
+            {
+                container.slots.put(slot, key.serializer().read(value));
+            }
+        }
+        return container;
+    }
+
+    @Override
+    public CompoundTag save(CompoundTag tag)
+    {
+        for(int slot = 0; slot < this.keys.length; slot++)
+        {
+            SyncedLevelDataKey<?> key = this.keys[slot];
+            if(key.save())
+            {
+                tag.put(key.id().toString(), this.slots.getSerializer(slot).write(this.slots.get(slot)));
+            }
+        }
+        return tag;
+    }
+
+    Object get(int slot)
+    {
+        return this.slots.get(slot);
+    }
+
+    /**
+     * Updates the value in a slot
+     *
+     * @return true if the value changed and needs to be synced to clients
+     */
+    boolean set(int slot, Object value)
+    {
+        return this.slots.set(slot, value) && this.onChanged(slot);
+    }
+
+    /**
+     * Marks the value in a slot as changed, regardless of its content
+     *
+     * @return true if the value needs to be synced to clients
+     */
+    boolean markDirty(int slot)
+    {
+        this.slots.refreshHash(slot);
+        return this.onChanged(slot);
+    }
+
+    private boolean onChanged(int slot)
+    {
+        SyncedLevelDataKey<?> key = this.keys[slot];
+        if(key.save())
+        {
+            this.setDirty();
+        }
+        if(key.syncMode() == SyncedDataKey.SyncMode.NONE)
+        {
+            return false;
+        }
+        this.slots.markDirty(slot);
+        return true;
+    }
+
+    /**
+     * Updates the value in a slot with a value received from the server
+     */
+    void update(int slot, Object value)
+    {
+        this.slots.put(slot, value);
+    }
+
+    /**
+     * Resets every value to the default value of its key
+     */
+    void reset()
+    {
+        for(int slot = 0; slot < this.keys.length; slot++)
+        {
+            this.slots.put(slot, this.keys[slot].defaultValueSupplier().get());
+        }
+    }
+
+    boolean hasChanges()
+    {
+        return this.slots.hasDirtySlots();
+    }
+
+    /**
+     * Writes the values that changed since the last call, then clears the changes
+     */
+    void writeChanges(FriendlyByteBuf buffer)
+    {
+        BitSet dirtySlots = this.slots.getDirtySlots();
+        buffer.writeVarInt(dirtySlots.cardinality());
+        for(int slot = dirtySlots.nextSetBit(0); slot >= 0; slot = dirtySlots.nextSetBit(slot + 1))
+        {
+            this.writeEntry(buffer, slot);
+        }
+        dirtySlots.clear();
+    }
+
+    /**
+     * Writes the values of every key that is synced to clients
+     */
+    void writeAll(FriendlyByteBuf buffer)
+    {
+        int count = 0;
+        for(SyncedLevelDataKey<?> key : this.keys)
+        {
+            if(key.syncMode() != SyncedDataKey.SyncMode.NONE)
+            {
+                count++;
+            }
+        }
+        buffer.writeVarInt(count);
+        for(int slot = 0; slot < this.keys.length; slot++)
+        {
+            if(this.keys[slot].syncMode() != SyncedDataKey.SyncMode.NONE)
+            {
+                this.writeEntry(buffer, slot);
+            }
+        }
+    }
+
+    private void writeEntry(FriendlyByteBuf buffer, int slot)
+    {
+        buffer.writeLong(SyncedLevelData.getKeyHash(this.keys[slot]));
+        this.slots.getSerializer(slot).write(buffer, this.slots.get(slot));
+    }
+}
@@ -0,0 +1,352 @@
+package com.mrcrayfish.framework.level.sync;
+
+import com.mrcrayfish.framework.Constants;
+import com.mrcrayfish.framework.FrameworkData;
+import com.mrcrayfish.framework.api.event.ClientConnectionEvents;
+import com.mrcrayfish.framework.api.event.PlayerEvents;
+import com.mrcrayfish.framework.api.event.ServerEvents;
+import com.mrcrayfish.framework.api.event.TickEvents;
+import com.mrcrayfish.framework.api.sync.SyncedLevelDataKey;
+import com.mrcrayfish.framework.network.Network;
+import com.mrcrayfish.framework.network.message.play.S2CUpdateLevelData;
+import com.mrcrayfish.framework.sync.KeyHashes;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceMap;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
+import net.minecraft.network.Connection;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.Level;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Manages synced level data keys. Changes made during a tick are collected per level, then at the
+ * end of the server tick the changes of each level and the server wide changes are encoded once
+ * and the same encoded payload is sent to every player in that level, as a single message.
+ * <p>
+ * Author: MrCrayfish
+ */
+public final class SyncedLevelData
+{
+    private static final Marker SYNCED_LEVEL_DATA_MARKER = MarkerFactory.getMarker("SYNCED_LEVEL_DATA");
+    private static final String LEVEL_DATA_NAME = "framework_synced_level_data";
+    private static final String SERVER_DATA_NAME = "framework_synced_server_data";
+    private static SyncedLevelData instance;
+
+    private final Object2ObjectMap<ResourceLocation, SyncedLevelDataKey<?>> registeredKeys = new Object2ObjectLinkedOpenHashMap<>();
+    private final Long2ReferenceMap<SyncedLevelDataKey<?>> keysByHash = new Long2ReferenceOpenHashMap<>();
+    private final Reference2IntMap<SyncedLevelDataKey<?>> slots = new Reference2IntOpenHashMap<>();
+    private final List<SyncedLevelDataKey<?>> levelKeys = new ArrayList<>();
+    private final List<SyncedLevelDataKey<?>> serverKeys = new ArrayList<>();
+    private final ReferenceLinkedOpenHashSet<ServerLevel> dirtyLevels = new ReferenceLinkedOpenHashSet<>();
+    private final Reference2ObjectMap<ServerLevel, LevelDataContainer> levelData = new Reference2ObjectOpenHashMap<>();
+    private final Map<UUID, ResourceKey<Level>> playerLevels = new HashMap<>();
+    @Nullable
+    private LevelDataContainer serverData;
+    private boolean serverDirty;
+    @Nullable
+    private LevelDataContainer clientLevelData;
+    @Nullable
+    private LevelDataContainer clientServerData;
+
+    private SyncedLevelData()
+    {
+        PlayerEvents.LOGGED_IN.register(this::onPlayerLoggedIn);
+        PlayerEvents.LOGGED_OUT.register(this::onPlayerLoggedOut);
+        PlayerEvents.CHANGE_DIMENSION.register(this::onPlayerChangedDimension);
+        PlayerEvents.RESPAWN.register(this::onPlayerRespawn);
+        TickEvents.END_SERVER.register(this::onServerTickEnd);
+        ServerEvents.STOPPED.register(this::onServerStopped);
+        ClientConnectionEvents.LOGGING_OUT.register(this::onClientLoggingOut);
+    }
+
+    public static SyncedLevelData instance()
+    {
+        if(instance == null)
+        {
+            instance = new SyncedLevelData();
+        }
+        return instance;
+    }
+
+    /**
+     * Registers a synced level data key into the system.
+     *
+     * @param key a synced level data key instance
+     */
+    public synchronized <T> void registerKey(SyncedLevelDataKey<T> key)
+    {
+        if(FrameworkData.isLoaded())
+        {
+            throw new IllegalStateException(String.format("Tried to register synced level data key %s after game initialization", key.id()));
+        }
+        if(this.registeredKeys.containsKey(key.id()))
+        {
+            throw new IllegalArgumentException(String.format("The synced level data key %s is already registered", key.id()));
+        }
+        List<SyncedLevelDataKey<?>> scope = key.serverWide() ? this.serverKeys : this.levelKeys;
+        this.slots.put(key, scope.size());
+        scope.add(key);
+        this.registeredKeys.put(key.id(), key);
+        this.keysByHash.put(getKeyHash(key), key);
+        Constants.LOG.info(SYNCED_LEVEL_DATA_MARKER, "Registered synced level data key {}", key.id());
+    }
+
+    public <T> void set(Level level, SyncedLevelDataKey<T> key, T value)
+    {
+        if(this.getContainer(level, key).set(this.getSlot(key), value))
+        {
+            this.markChanged(level, key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(Level level, SyncedLevelDataKey<T> key)
+    {
+        return (T) this.getContainer(level, key).get(this.getSlot(key));
+    }
+
+    public void markDirty(Level level, SyncedLevelDataKey<?> key)
+    {
+        if(this.getContainer(level, key).markDirty(this.getSlot(key)))
+        {
+            this.markChanged(level, key);
+        }
+    }
+
+    private void markChanged(Level level, SyncedLevelDataKey<?> key)
+    {
+        if(level instanceof ServerLevel serverLevel)
+        {
+            if(key.serverWide())
+            {
+                this.serverDirty = true;
+            }
+            else
+            {
+                this.dirtyLevels.add(serverLevel);
+            }
+        }
+    }
+
+    private int getSlot(SyncedLevelDataKey<?> key)
+    {
+        if(!this.registeredKeys.containsKey(key.id()))
+        {
+            throw new IllegalArgumentException(String.format("The synced level data key %s is not registered", key.id()));
+        }
+        return this.slots.getInt(key);
+    }
+
+    private LevelDataContainer getContainer(Level level, SyncedLevelDataKey<?> key)
+    {
+        if(level instanceof ServerLevel serverLevel)
+        {
+            return key.serverWide() ? this.getServerData(serverLevel.getServer()) : this.getLevelData(serverLevel);
+        }
+        return key.serverWide() ? this.getClientServerData() : this.getClientLevelData();
+    }
+
+    /**
+     * The saved data is cached, since looking it up from the data storage is a string keyed map
+     * lookup. The cache is cleared when the server stops.
+     */
+    private LevelDataContainer getLevelData(ServerLevel level)
+    {
+        return this.levelData.computeIfAbsent(level, l -> level.getDataStorage().computeIfAbsent(tag -> LevelDataContainer.load(this.levelKeys, tag), () -> new LevelDataContainer(this.levelKeys), LEVEL_DATA_NAME));
+    }
+
+    private LevelDataContainer getServerData(MinecraftServer server)
+    {
+        if(this.serverData == null)
+        {
+            this.serverData = server.overworld().getDataStorage().computeIfAbsent(tag -> LevelDataContainer.load(this.serverKeys, tag), () -> new LevelDataContainer(this.serverKeys), SERVER_DATA_NAME);
+        }
+        return this.serverData;
+    }
+
+    private LevelDataContainer getClientLevelData()
+    {
+        if(this.clientLevelData == null)
+        {
+            this.clientLevelData = new LevelDataContainer(this.levelKeys);
+        }
+        return this.clientLevelData;
+    }
+
+    private LevelDataContainer getClientServerData()
+    {
+        if(this.clientServerData == null)
+        {
+            this.clientServerData = new LevelDataContainer(this.serverKeys);
+        }
+        return this.clientServerData;
+    }
+
+    private void onPlayerLoggedIn(Player player)
+    {
+        if(player instanceof ServerPlayer serverPlayer && this.hasKeys())
+        {
+            ByteBuf serverData = this.encode(this.getServerData(serverPlayer.server), false);
+            ByteBuf levelData = this.encode(this.getLevelData(serverPlayer.serverLevel()), false);
+            S2CUpdateLevelData message = new S2CUpdateLevelData(S2CUpdateLevelData.RESET_SERVER | S2CUpdateLevelData.RESET_LEVEL, serverData, levelData);
+            Network.getPlayChannel().sendToPlayer(() -> serverPlayer, message);
+            this.playerLevels.put(serverPlayer.getUUID(), serverPlayer.level().dimension());
+        }
+    }
+
+    private void onPlayerLoggedOut(Player player)
+    {
+        if(player instanceof ServerPlayer)
+        {
+            this.playerLevels.remove(player.getUUID());
+        }
+    }
+
+    private void onPlayerChangedDimension(Player player, ResourceKey<Level> oldDimension, ResourceKey<Level> newDimension)
+    {
+        if(player instanceof ServerPlayer serverPlayer)
+        {
+            this.sendLevelData(serverPlayer);
+        }
+    }
+
+    /**
+     * Players can respawn in a different level without changing dimension, for example when their
+     * spawn point is in another dimension.
+     */
+    private void onPlayerRespawn(Player player, boolean conqueredEnd)
+    {
+        if(player instanceof ServerPlayer serverPlayer && this.playerLevels.get(serverPlayer.getUUID()) != serverPlayer.level().dimension())
+        {
+            this.sendLevelData(serverPlayer);
+        }
+    }
+
+    private void sendLevelData(ServerPlayer player)
+    {
+        if(!this.levelKeys.isEmpty())
+        {
+            ByteBuf levelData = this.encode(this.getLevelData(player.serverLevel()), false);
+            S2CUpdateLevelData message = new S2CUpdateLevelData(S2CUpdateLevelData.RESET_LEVEL, S2CUpdateLevelData.EMPTY_SECTION, levelData);
+            Network.getPlayChannel().sendToPlayer(() -> player, message);
+            this.playerLevels.put(player.getUUID(), player.level().dimension());
+        }
+    }
+
+    private void onServerStopped(MinecraftServer server)
+    {
+        this.levelData.clear();
+        this.playerLevels.clear();
+        this.dirtyLevels.clear();
+        this.serverData = null;
+        this.serverDirty = false;
+    }
+
+    private void onClientLoggingOut(@Nullable Connection connection)
+    {
+        this.clientLevelData = null;
+        this.clientServerData = null;
+    }
+
+    private void onServerTickEnd(MinecraftServer server)
+    {
+        if(!this.serverDirty && this.dirtyLevels.isEmpty())
+            return;
+
+        // Encoded once and shared by the message of every level
+        ByteBuf serverData = this.serverDirty ? this.encode(this.getServerData(server), true) : S2CUpdateLevelData.EMPTY_SECTION;
+        for(ServerLevel level : server.getAllLevels())
+        {
+            boolean levelDirty = this.dirtyLevels.contains(level);
+            if(!this.serverDirty && !levelDirty)
+                continue;
+
+            ByteBuf levelData = levelDirty ? this.encode(this.getLevelData(level), true) : S2CUpdateLevelData.EMPTY_SECTION;
+            if(level.players().isEmpty())
+                continue;
+
+            S2CUpdateLevelData message = new S2CUpdateLevelData(0, serverData, levelData);
+            for(ServerPlayer player : level.players())
+            {
+                Network.getPlayChannel().sendToPlayer(() -> player, message);
+            }
+        }
+        this.serverDirty = false;
+        this.dirtyLevels.clear();
+    }
+
+    private ByteBuf encode(LevelDataContainer container, boolean changes)
+    {
+        FriendlyByteBuf buffer = new FriendlyByteBuf(Unpooled.buffer());
+        if(changes)
+        {
+            container.writeChanges(buffer);
+        }
+        else
+        {
+            container.writeAll(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Applies level data received from the server
+     *
+     * @param message the received message
+     */
+    public void handleUpdateLevelData(S2CUpdateLevelData message)
+    {
+        this.apply(this.getClientServerData(), message.getServerEntries(), (message.getFlags() & S2CUpdateLevelData.RESET_SERVER) != 0);
+        this.apply(this.getClientLevelData(), message.getLevelEntries(), (message.getFlags() & S2CUpdateLevelData.RESET_LEVEL) != 0);
+    }
+
+    private void apply(LevelDataContainer container, List<S2CUpdateLevelData.Entry> entries, boolean reset)
+    {
+        if(reset)
+        {
+            container.reset();
+        }
+        entries.forEach(entry -> container.update(this.slots.getInt(entry.key()), entry.value()));
+    }
+
+    private boolean hasKeys()
+    {
+        return !this.registeredKeys.isEmpty();
+    }
+
+    @Nullable
+    public SyncedLevelDataKey<?> getKeyByHash(long hash)
+    {
+        return this.keysByHash.get(hash);
+    }
+
+    /**
+     * @return a hash of the id of the key, used to identify keys over the network
+     */
+    public static long getKeyHash(SyncedLevelDataKey<?> key)
+    {
+        return KeyHashes.hash("level", key.id());
+    }
+}
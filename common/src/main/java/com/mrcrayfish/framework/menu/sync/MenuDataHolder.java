@@ -0,0 +1,165 @@
+package com.mrcrayfish.framework.menu.sync;
+
+import com.mrcrayfish.framework.api.sync.IDataSerializer;
+import com.mrcrayfish.framework.api.sync.IDeltaDataSerializer;
+import com.mrcrayfish.framework.api.sync.ISyncedMenu;
+import com.mrcrayfish.framework.api.sync.SyncedMenuDataKey;
+import com.mrcrayfish.framework.sync.ValueSlots;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+
+import javax.annotation.Nullable;
+import java.util.function.Supplier;
+
+/**
+ * Holds the synced menu data of a single menu. An instance should be created in the constructor of
+ * a menu implementing {@link ISyncedMenu} and returned from {@link ISyncedMenu#getSyncedDataHolder()}.
+ * <p>
+ * Author: MrCrayfish
+ */
+public final class MenuDataHolder
+{
+    private final AbstractContainerMenu menu;
+    private final Reference2ObjectMap<SyncedMenuDataKey<?>, Entry<?>> entries = new Reference2ObjectLinkedOpenHashMap<>();
+    private boolean remote;
+
+    public MenuDataHolder(AbstractContainerMenu menu)
+    {
+        this.menu = menu;
+    }
+
+    /**
+     * Tracks the source of the value of a key. This should be called when the menu is created on
+     * the server, for example with a getter of the block entity that opened the menu. If the menu
+     * also calls this on the client, the source is only used until the first values are received
+     * from the server, after which the received values are always returned.
+     *
+     * @param key    a registered synced menu data key
+     * @param source a supplier returning the current value
+     */
+    public <T> void track(SyncedMenuDataKey<T> key, Supplier<T> source)
+    {
+        SyncedMenuData.instance().checkRegistered(key);
+        this.entries.put(key, new Entry<>(key, source));
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T get(SyncedMenuDataKey<T> key)
+    {
+        Entry<T> entry = (Entry<T>) this.entries.get(key);
+        return entry != null ? entry.getValue(!this.remote) : key.defaultValueSupplier().get();
+    }
+
+    AbstractContainerMenu getMenu()
+    {
+        return this.menu;
+    }
+
+    /**
+     * Writes the tracked values that changed since they were last sent
+     *
+     * @param buffer the buffer to write to
+     * @return the amount of values written
+     */
+    int writeChanges(FriendlyByteBuf buffer)
+    {
+        int count = 0;
+        for(Entry<?> entry : this.entries.values())
+        {
+            if(entry.writeIfChanged(buffer))
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Updates the value of a key with a value or delta received from the server. From then on, this
+     * holder ignores tracked sources, since it is on the client.
+     */
+    @SuppressWarnings("unchecked")
+    <T> void update(SyncedMenuDataKey<T> key, @Nullable Object value, @Nullable byte[] delta)
+    {
+        this.remote = true;
+        Entry<T> entry = (Entry<T>) this.entries.computeIfAbsent(key, k -> new Entry<>(key, null));
+        if(delta != null && key.serializer() instanceof IDeltaDataSerializer<T> serializer)
+        {
+            entry.value = serializer.readDelta(new FriendlyByteBuf(Unpooled.wrappedBuffer(delta)), entry.getValue(false));
+        }
+        else
+        {
+            entry.value = (T) value;
+        }
+    }
+
+    private static final class Entry<T>
+    {
+        private final SyncedMenuDataKey<T> key;
+        @Nullable
+        private final Supplier<T> source;
+        @Nullable
+        private T value;
+        @Nullable
+        private T lastSent;
+        private int lastSentHash;
+        private boolean sent;
+
+        private Entry(SyncedMenuDataKey<T> key, @Nullable Supplier<T> source)
+        {
+            this.key = key;
+            this.source = source;
+        }
+
+        private T getValue(boolean useSource)
+        {
+            if(useSource && this.source != null)
+            {
+                return this.source.get();
+            }
+            return this.value != null ? this.value : this.key.defaultValueSupplier().get();
+        }
+
+        private boolean writeIfChanged(FriendlyByteBuf buffer)
+        {
+            if(this.source == null)
+                return false;
+
+            T value = this.source.get();
+            IDataSerializer<T> serializer = this.key.serializer();
+            int hash = serializer.contentHash(value);
+            if(this.sent && !ValueSlots.hasChanged(serializer, this.lastSent, this.lastSentHash, value, hash))
+                return false;
+
+            buffer.writeLong(SyncedMenuData.getKeyHash(this.key));
+            if(serializer instanceof IDeltaDataSerializer<T> delta)
+            {
+                // The viewer always holds the value last sent, so a delta can be used after the first value
+                buffer.writeBoolean(this.sent);
+                if(this.sent)
+                {
+                    FriendlyByteBuf deltaBuffer = new FriendlyByteBuf(Unpooled.buffer());
+                    delta.writeDelta(deltaBuffer, this.lastSent, value);
+                    buffer.writeVarInt(deltaBuffer.readableBytes());
+                    buffer.writeBytes(deltaBuffer);
+                }
+                else
+                {
+                    delta.write(buffer, value);
+                }
+                this.lastSent = delta.copy(value);
+            }
+            else
+            {
+                serializer.write(buffer, value);
+                this.lastSent = value;
+            }
+            this.lastSentHash = hash;
+            this.sent = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.mrcrayfish.framework.menu.sync;
+
+import com.mrcrayfish.framework.Constants;
+import com.mrcrayfish.framework.FrameworkData;
+import com.mrcrayfish.framework.api.event.TickEvents;
+import com.mrcrayfish.framework.api.sync.ISyncedMenu;
+import com.mrcrayfish.framework.api.sync.SyncedMenuDataKey;
+import com.mrcrayfish.framework.network.Network;
+import com.mrcrayfish.framework.network.message.play.S2CUpdateMenuData;
+import com.mrcrayfish.framework.sync.KeyHashes;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceMap;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import javax.annotation.Nullable;
+
+/**
+ * Manages synced menu data keys. At the end of every server tick, the tracked values of the menu
+ * open by each player are compared against the values last sent, and the changed values are sent
+ * to the player as a single {@link S2CUpdateMenuData} message.
+ * <p>
+ * Author: MrCrayfish
+ */
+public final class SyncedMenuData
+{
+    private static final Marker SYNCED_MENU_DATA_MARKER = MarkerFactory.getMarker("SYNCED_MENU_DATA");
+    private static SyncedMenuData instance;
+
+    private final Object2ObjectMap<ResourceLocation, SyncedMenuDataKey<?>> registeredKeys = new Object2ObjectOpenHashMap<>();
+    private final Long2ReferenceMap<SyncedMenuDataKey<?>> keysByHash = new Long2ReferenceOpenHashMap<>();
+
+    private SyncedMenuData()
+    {
+        TickEvents.END_SERVER.register(this::onServerTickEnd);
+    }
+
+    public static SyncedMenuData instance()
+    {
+        if(instance == null)
+        {
+            instance = new SyncedMenuData();
+        }
+        return instance;
+    }
+
+    /**
+     * Registers a synced menu data key into the system.
+     *
+     * @param key a synced menu data key instance
+     */
+    public synchronized <T> void registerKey(SyncedMenuDataKey<T> key)
+    {
+        if(FrameworkData.isLoaded())
+        {
+            throw new IllegalStateException(String.format("Tried to register synced menu data key %s after game initialization", key.id()));
+        }
+        if(this.registeredKeys.containsKey(key.id()))
+        {
+            throw new IllegalArgumentException(String.format("The synced menu data key %s is already registered", key.id()));
+        }
+        this.registeredKeys.put(key.id(), key);
+        this.keysByHash.put(getKeyHash(key), key);
+        Constants.LOG.info(SYNCED_MENU_DATA_MARKER, "Registered synced menu data key {}", key.id());
+    }
+
+    void checkRegistered(SyncedMenuDataKey<?> key)
+    {
+        if(!this.registeredKeys.containsKey(key.id()))
+        {
+            throw new IllegalArgumentException(String.format("The synced menu data key %s is not registered", key.id()));
+        }
+    }
+
+    public <T> T get(AbstractContainerMenu menu, SyncedMenuDataKey<T> key)
+    {
+        this.checkRegistered(key);
+        if(!(menu instanceof ISyncedMenu synced))
+        {
+            throw new IllegalArgumentException(String.format("The menu %s does not implement ISyncedMenu", menu.getClass().getName()));
+        }
+        return synced.getSyncedDataHolder().get(key);
+    }
+
+    private void onServerTickEnd(MinecraftServer server)
+    {
+        if(this.registeredKeys.isEmpty())
+            return;
+
+        for(ServerPlayer player : server.getPlayerList().getPlayers())
+        {
+            if(player.containerMenu instanceof ISyncedMenu synced)
+            {
+                this.sendChanges(player, synced.getSyncedDataHolder());
+            }
+        }
+    }
+
+    private void sendChanges(ServerPlayer player, MenuDataHolder holder)
+    {
+        FriendlyByteBuf entries = new FriendlyByteBuf(Unpooled.buffer());
+        int count = holder.writeChanges(entries);
+        if(count == 0)
+            return;
+
+        FriendlyByteBuf data = new FriendlyByteBuf(Unpooled.buffer(entries.readableBytes() + 10));
+        data.writeVarInt(holder.getMenu().containerId);
+        data.writeVarInt(count);
+        data.writeBytes(entries);
+        Network.getPlayChannel().sendToPlayer(() -> player, new S2CUpdateMenuData(data));
+    }
+
+    /**
+     * Applies menu data received from the server to the menu currently open by the player
+     *
+     * @param player  the client player
+     * @param message the received message
+     */
+    public void handleUpdateMenuData(Player player, S2CUpdateMenuData message)
+    {
+        AbstractContainerMenu menu = player.containerMenu;
+        if(menu.containerId != message.getContainerId() || !(menu instanceof ISyncedMenu synced))
+            return;
+
+        MenuDataHolder holder = synced.getSyncedDataHolder();
+        message.getEntries().forEach(entry -> holder.update(entry.key(), entry.value(), entry.delta()));
+    }
+
+    @Nullable
+    public SyncedMenuDataKey<?> getKeyByHash(long hash)
+    {
+        return this.keysByHash.get(hash);
+    }
+
+    /**
+     * @return a hash of the id of the key, used to identify keys over the network
+     */
+    public static long getKeyHash(SyncedMenuDataKey<?> key)
+    {
+        return KeyHashes.hash("menu", key.id());
+    }
+}
@@ -6,9 +6,16 @@ import com.mrcrayfish.framework.api.network.FrameworkNetwork;
 import com.mrcrayfish.framework.api.network.MessageDirection;
 import com.mrcrayfish.framework.config.FrameworkConfigManager;
 import com.mrcrayfish.framework.network.message.handshake.S2CLoginData;
+import com.mrcrayfish.framework.network.message.handshake.S2CSyncedEntityData;
 import com.mrcrayfish.framework.network.message.handshake.S2CLoginConfigData;
+import com.mrcrayfish.framework.network.message.play.C2SRequestEntityData;
+import com.mrcrayfish.framework.network.message.play.S2CBatchUpdateEntityData;
+import com.mrcrayfish.framework.network.message.play.S2CRestorePlayerData;
 import com.mrcrayfish.framework.network.message.play.S2CSyncConfigData;
+import com.mrcrayfish.framework.network.message.play.S2CUpdateBlockEntityData;
 import com.mrcrayfish.framework.network.message.play.S2CUpdateEntityData;
+import com.mrcrayfish.framework.network.message.play.S2CUpdateLevelData;
+import com.mrcrayfish.framework.network.message.play.S2CUpdateMenuData;
 import net.minecraft.resources.ResourceLocation;
 
 /**
@@ -17,16 +24,23 @@ import net.minecraft.resources.ResourceLocation;
 public class Network
 {
     private static final FrameworkNetwork HANDSHAKE_CHANNEL = FrameworkAPI
-            .createNetworkBuilder(new ResourceLocation(Constants.MOD_ID, "handshake"), 1)
+            .createNetworkBuilder(new ResourceLocation(Constants.MOD_ID, "handshake"), 2)
             .registerHandshakeMessage(S2CLoginData.class, LoginDataManager::getLoginDataMessages)
             .registerHandshakeMessage(S2CLoginConfigData.class, FrameworkConfigManager.getInstance()::getMessagesForLogin)
+            .registerHandshakeMessage(S2CSyncedEntityData.class, S2CSyncedEntityData::getMessagesForLogin)
             .ignoreServer()
             .build();
 
     private static final FrameworkNetwork PLAY_CHANNEL = FrameworkAPI
-            .createNetworkBuilder(new ResourceLocation(Constants.MOD_ID, "play"), 1)
+            .createNetworkBuilder(new ResourceLocation(Constants.MOD_ID, "play"), 2)
             .registerPlayMessage(S2CUpdateEntityData.class, MessageDirection.PLAY_CLIENT_BOUND)
             .registerPlayMessage(S2CSyncConfigData.class, MessageDirection.PLAY_CLIENT_BOUND)
+            .registerPlayMessage(S2CBatchUpdateEntityData.class, MessageDirection.PLAY_CLIENT_BOUND)
+            .registerPlayMessage(C2SRequestEntityData.class, MessageDirection.PLAY_SERVER_BOUND)
+            .registerPlayMessage(S2CRestorePlayerData.class, MessageDirection.PLAY_CLIENT_BOUND)
+            .registerPlayMessage(S2CUpdateBlockEntityData.class, MessageDirection.PLAY_CLIENT_BOUND)
+            .registerPlayMessage(S2CUpdateLevelData.class, MessageDirection.PLAY_CLIENT_BOUND)
+            .registerPlayMessage(S2CUpdateMenuData.class, MessageDirection.PLAY_CLIENT_BOUND)
             .ignoreServer()
             .build();
 
@@ -5,58 +5,83 @@ import com.mrcrayfish.framework.api.network.MessageContext;
 import com.mrcrayfish.framework.api.network.message.HandshakeMessage;
 import com.mrcrayfish.framework.api.sync.SyncedDataKey;
 import com.mrcrayfish.framework.entity.sync.SyncedEntityData;
+import it.unimi.dsi.fastutil.ints.Int2LongMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.network.chat.Component;
-import net.minecraft.resources.ResourceLocation;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 
 /**
+ * Sends the synced data key table of the server to the client. Instead of the full ids of every
+ * key, the table is sent as a fingerprint followed by a 64-bit hash of the id of each key, in the
+ * order of their internal ids. A client with the same fingerprint already uses the same internal
+ * ids and keeps its own table, otherwise the client resolves the internal ids of the server using
+ * the hashes. A client that has keys the server does not know of is still accepted, but a client
+ * missing any key of the server is disconnected.
+ * <p>
+ * Login messages are sent before the client can report its own fingerprint, so the hashes are
+ * always sent to remote clients. A local client shares the key table of the server, so it is only
+ * sent the fingerprint.
+ * <p>
  * Author: MrCrayfish
  */
 public class S2CSyncedEntityData extends HandshakeMessage<S2CSyncedEntityData>
 {
-    private Map<ResourceLocation, List<Pair<ResourceLocation, Integer>>> keyMap;
+    private long fingerprint;
+    private boolean includeHashes;
+    private Int2LongMap keyHashes;
 
     public S2CSyncedEntityData() {}
 
-    private S2CSyncedEntityData(Map<ResourceLocation, List<Pair<ResourceLocation, Integer>>> keyMap)
+    private S2CSyncedEntityData(boolean includeHashes)
     {
-        this.keyMap = keyMap;
+        this.includeHashes = includeHashes;
+    }
+
+    private S2CSyncedEntityData(long fingerprint, Int2LongMap keyHashes)
+    {
+        this.fingerprint = fingerprint;
+        this.keyHashes = keyHashes;
+    }
+
+    public static List<Pair<String, S2CSyncedEntityData>> getMessagesForLogin(boolean isLocal)
+    {
+        return Collections.singletonList(Pair.of(S2CSyncedEntityData.class.getName(), new S2CSyncedEntityData(!isLocal)));
     }
 
     @Override
     public void encode(S2CSyncedEntityData message, FriendlyByteBuf buffer)
     {
-        Set<SyncedDataKey<?, ?>> keys = SyncedEntityData.instance().getKeys();
-        buffer.writeInt(keys.size());
-        keys.forEach(key -> {
-            int id = SyncedEntityData.instance().getInternalId(key);
-            buffer.writeResourceLocation(key.classKey().id());
-            buffer.writeResourceLocation(key.id());
-            buffer.writeVarInt(id);
-        });
+        buffer.writeLong(SyncedEntityData.instance().getKeyTableFingerprint());
+        if(!message.includeHashes)
+        {
+            buffer.writeVarInt(0);
+            return;
+        }
+        // Internal ids are assigned sequentially, so the hashes are written in that order without the ids
+        List<SyncedDataKey<?, ?>> keys = new ArrayList<>(SyncedEntityData.instance().getKeys());
+        keys.sort(Comparator.comparingInt(SyncedEntityData.instance()::getInternalId));
+        buffer.writeVarInt(keys.size());
+        keys.forEach(key -> buffer.writeLong(SyncedEntityData.getKeyHash(key)));
     }
 
     @Override
     public S2CSyncedEntityData decode(FriendlyByteBuf buffer)
     {
-        int size = buffer.readInt();
-        Map<ResourceLocation, List<Pair<ResourceLocation, Integer>>> keyMap = new HashMap<>();
-        for(int i = 0; i < size; i++)
+        long fingerprint = buffer.readLong();
+        int size = buffer.readVarInt();
+        Int2LongMap keyHashes = new Int2LongOpenHashMap(size);
+        for(int id = 0; id < size; id++)
         {
-            ResourceLocation classId = buffer.readResourceLocation();
-            ResourceLocation keyId = buffer.readResourceLocation();
-            int id = buffer.readVarInt();
-            keyMap.computeIfAbsent(classId, c -> new ArrayList<>()).add(Pair.of(keyId, id));
+            keyHashes.put(id, buffer.readLong());
         }
-        return new S2CSyncedEntityData(keyMap);
+        return new S2CSyncedEntityData(fingerprint, keyHashes);
     }
 
     @Override
@@ -84,8 +109,16 @@ public class S2CSyncedEntityData extends HandshakeMessage<S2CSyncedEntityData>
         context.reply(new Acknowledge());
     }
 
-    public Map<ResourceLocation, List<Pair<ResourceLocation, Integer>>> getKeyMap()
+    public long getFingerprint()
+    {
+        return this.fingerprint;
+    }
+
+    /**
+     * @return a map of the internal ids of the server to the hash of the key
+     */
+    public Int2LongMap getKeyHashes()
     {
-        return this.keyMap;
+        return this.keyHashes;
     }
 }
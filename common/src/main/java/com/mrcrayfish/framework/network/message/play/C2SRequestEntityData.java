@@ -0,0 +1,69 @@
+package com.mrcrayfish.framework.network.message.play;
+
+import com.mrcrayfish.framework.api.network.MessageContext;
+import com.mrcrayfish.framework.api.network.message.PlayMessage;
+import com.mrcrayfish.framework.entity.sync.SyncedEntityData;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.server.level.ServerPlayer;
+
+/**
+ * Sent by the client to subscribe to or unsubscribe from an on demand synced data key of an entity.
+ * The key is identified by its hash, see {@link SyncedEntityData#getKeyHash}.
+ * <p>
+ * Author: MrCrayfish
+ */
+public class C2SRequestEntityData extends PlayMessage<C2SRequestEntityData>
+{
+    private int entityId;
+    private long keyHash;
+    private boolean subscribe;
+
+    public C2SRequestEntityData() {}
+
+    public C2SRequestEntityData(int entityId, long keyHash, boolean subscribe)
+    {
+        this.entityId = entityId;
+        this.keyHash = keyHash;
+        this.subscribe = subscribe;
+    }
+
+    @Override
+    public void encode(C2SRequestEntityData message, FriendlyByteBuf buffer)
+    {
+        buffer.writeVarInt(message.entityId);
+        buffer.writeLong(message.keyHash);
+        buffer.writeBoolean(message.subscribe);
+    }
+
+    @Override
+    public C2SRequestEntityData decode(FriendlyByteBuf buffer)
+    {
+        return new C2SRequestEntityData(buffer.readVarInt(), buffer.readLong(), buffer.readBoolean());
+    }
+
+    @Override
+    public void handle(C2SRequestEntityData message, MessageContext context)
+    {
+        ServerPlayer player = context.getPlayer();
+        if(player != null)
+        {
+            context.execute(() -> SyncedEntityData.instance().handleOnDemandRequest(player, message));
+        }
+        context.setHandled(true);
+    }
+
+    public int getEntityId()
+    {
+        return this.entityId;
+    }
+
+    public long getKeyHash()
+    {
+        return this.keyHash;
+    }
+
+    public boolean isSubscribe()
+    {
+        return this.subscribe;
+    }
+}
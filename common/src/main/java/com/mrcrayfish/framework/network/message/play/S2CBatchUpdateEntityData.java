@@ -0,0 +1,126 @@
+package com.mrcrayfish.framework.network.message.play;
+
+import com.mrcrayfish.framework.api.network.MessageContext;
+import com.mrcrayfish.framework.api.network.message.PlayMessage;
+import com.mrcrayfish.framework.client.multiplayer.ClientPlayHandler;
+import com.mrcrayfish.framework.entity.sync.SyncedEntityData;
+import com.mrcrayfish.framework.entity.sync.SyncedStringDictionary;
+import io.netty.buffer.ByteBuf;
+import it.unimi.dsi.fastutil.ints.Int2ObjectArrayMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import net.minecraft.network.FriendlyByteBuf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the synced entity data updates of multiple entities that a player should receive in a
+ * single tick. The updates are encoded once on the server and copied into the batch of every
+ * receiving player. On the client each update is handled exactly like {@link S2CUpdateEntityData}.
+ * Dictionary strings used by the updates are sent before the updates, see {@link SyncedStringDictionary}.
+ * <p>
+ * Author: MrCrayfish
+ */
+public class S2CBatchUpdateEntityData extends PlayMessage<S2CBatchUpdateEntityData>
+{
+    /**
+     * The maximum size in bytes of the updates in a single batch. A new batch will be started once
+     * this is reached, although a single update larger than this will still be sent on its own.
+     */
+    public static final int MAX_SIZE = 1 << 18;
+
+    private final List<ByteBuf> encodedUpdates = new ArrayList<>();
+    private final Int2ObjectMap<String> strings = new Int2ObjectArrayMap<>();
+    private int encodedSize;
+    private List<S2CUpdateEntityData> updates;
+
+    public S2CBatchUpdateEntityData() {}
+
+    private S2CBatchUpdateEntityData(List<S2CUpdateEntityData> updates)
+    {
+        this.updates = updates;
+    }
+
+    /**
+     * Tests if the encoded update can be added to this batch without exceeding {@link #MAX_SIZE}.
+     * An empty batch can always fit an update.
+     *
+     * @param update an update encoded with {@link S2CUpdateEntityData#writeUpdate}
+     */
+    public boolean canFit(ByteBuf update)
+    {
+        return this.encodedUpdates.isEmpty() || this.encodedSize + update.readableBytes() <= MAX_SIZE;
+    }
+
+    /**
+     * Adds an encoded update to this batch. The buffer is not consumed, so the same update can be
+     * added to multiple batches.
+     *
+     * @param update an update encoded with {@link S2CUpdateEntityData#writeUpdate}
+     */
+    public void add(ByteBuf update)
+    {
+        this.encodedUpdates.add(update);
+        this.encodedSize += update.readableBytes();
+    }
+
+    /**
+     * Adds a dictionary string that is used by an update of this batch
+     *
+     * @param id    the id of the string
+     * @param value the string
+     */
+    public void addString(int id, String value)
+    {
+        this.strings.put(id, value);
+        this.encodedSize += value.length();
+    }
+
+    public boolean isEmpty()
+    {
+        return this.encodedUpdates.isEmpty();
+    }
+
+    @Override
+    public void encode(S2CBatchUpdateEntityData message, FriendlyByteBuf buffer)
+    {
+        buffer.writeVarInt(message.strings.size());
+        message.strings.forEach((id, value) -> {
+            buffer.writeVarInt(id);
+            buffer.writeUtf(value);
+        });
+        buffer.writeVarInt(message.encodedUpdates.size());
+        message.encodedUpdates.forEach(update -> buffer.writeBytes(update, update.readerIndex(), update.readableBytes()));
+    }
+
+    @Override
+    public S2CBatchUpdateEntityData decode(FriendlyByteBuf buffer)
+    {
+        // Strings must be received before the updates are read, as the entries reference them
+        int stringCount = buffer.readVarInt();
+        for(int i = 0; i < stringCount; i++)
+        {
+            int id = buffer.readVarInt();
+            SyncedEntityData.instance().getStringDictionary().receive(id, buffer.readUtf());
+        }
+        int size = buffer.readVarInt();
+        List<S2CUpdateEntityData> updates = new ArrayList<>(size);
+        for(int i = 0; i < size; i++)
+        {
+            updates.add(S2CUpdateEntityData.readUpdate(buffer));
+        }
+        return new S2CBatchUpdateEntityData(updates);
+    }
+
+    @Override
+    public void handle(S2CBatchUpdateEntityData message, MessageContext context)
+    {
+        context.execute(() -> message.updates.forEach(ClientPlayHandler::handleSyncEntityData));
+        context.setHandled(true);
+    }
+
+    public List<S2CUpdateEntityData> getUpdates()
+    {
+        return this.updates;
+    }
+}
@@ -0,0 +1,50 @@
+package com.mrcrayfish.framework.network.message.play;
+
+import com.mrcrayfish.framework.api.network.MessageContext;
+import com.mrcrayfish.framework.api.network.message.PlayMessage;
+import com.mrcrayfish.framework.client.multiplayer.ClientPlayHandler;
+import net.minecraft.network.FriendlyByteBuf;
+
+/**
+ * Sent to a player when they join a level after respawning or changing dimension, where the client
+ * creates a new player entity. It is sent before the synced data of the player. The client copies
+ * the synced data it held for its previous player entity, as only the entries that changed since
+ * they were last sent will follow.
+ * <p>
+ * Author: MrCrayfish
+ */
+public class S2CRestorePlayerData extends PlayMessage<S2CRestorePlayerData>
+{
+    private int entityId;
+
+    public S2CRestorePlayerData() {}
+
+    public S2CRestorePlayerData(int entityId)
+    {
+        this.entityId = entityId;
+    }
+
+    @Override
+    public void encode(S2CRestorePlayerData message, FriendlyByteBuf buffer)
+    {
+        buffer.writeVarInt(message.entityId);
+    }
+
+    @Override
+    public S2CRestorePlayerData decode(FriendlyByteBuf buffer)
+    {
+        return new S2CRestorePlayerData(buffer.readVarInt());
+    }
+
+    @Override
+    public void handle(S2CRestorePlayerData message, MessageContext context)
+    {
+        context.execute(() -> ClientPlayHandler.handleRestorePlayerData(message));
+        context.setHandled(true);
+    }
+
+    public int getEntityId()
+    {
+        return this.entityId;
+    }
+}
@@ -0,0 +1,152 @@
+package com.mrcrayfish.framework.network.message.play;
+
+import com.mrcrayfish.framework.api.network.MessageContext;
+import com.mrcrayfish.framework.api.network.message.PlayMessage;
+import com.mrcrayfish.framework.api.sync.SyncedBlockEntityKey;
+import com.mrcrayfish.framework.blockentity.sync.SyncedBlockEntityData;
+import com.mrcrayfish.framework.client.multiplayer.ClientPlayHandler;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.objects.Reference2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.FriendlyByteBuf;
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the changed synced block entity data of every block entity in a single chunk. Keys are
+ * written once into a palette at the start of the message, so each value is only prefixed by a
+ * small index into the palette.
+ * <p>
+ * Author: MrCrayfish
+ */
+public class S2CUpdateBlockEntityData extends PlayMessage<S2CUpdateBlockEntityData>
+{
+    /**
+     * The size in bytes of the values after which a message is considered full. A new message will
+     * be started for the remaining block entities of the chunk.
+     */
+    public static final int MAX_SIZE = 1 << 18;
+
+    private ByteBuf data;
+    private List<Entry> entries;
+
+    public S2CUpdateBlockEntityData() {}
+
+    private S2CUpdateBlockEntityData(ByteBuf data)
+    {
+        this.data = data;
+    }
+
+    private S2CUpdateBlockEntityData(List<Entry> entries)
+    {
+        this.entries = entries;
+    }
+
+    @Override
+    public void encode(S2CUpdateBlockEntityData message, FriendlyByteBuf buffer)
+    {
+        buffer.writeBytes(message.data, message.data.readerIndex(), message.data.readableBytes());
+    }
+
+    @Override
+    public S2CUpdateBlockEntityData decode(FriendlyByteBuf buffer)
+    {
+        int paletteSize = buffer.readVarInt();
+        SyncedBlockEntityKey<?, ?>[] palette = new SyncedBlockEntityKey<?, ?>[paletteSize];
+        for(int i = 0; i < paletteSize; i++)
+        {
+            long hash = buffer.readLong();
+            palette[i] = SyncedBlockEntityData.instance().getKeyByHash(hash);
+            Validate.notNull(palette[i], "Synced block entity key does not exist for hash %016x", hash);
+        }
+        List<Entry> entries = new ArrayList<>();
+        int blockEntities = buffer.readVarInt();
+        for(int i = 0; i < blockEntities; i++)
+        {
+            BlockPos pos = BlockPos.of(buffer.readLong());
+            int count = buffer.readVarInt();
+            for(int j = 0; j < count; j++)
+            {
+                SyncedBlockEntityKey<?, ?> key = palette[buffer.readVarInt()];
+                entries.add(new Entry(pos, key, key.serializer().read(buffer)));
+            }
+        }
+        return new S2CUpdateBlockEntityData(entries);
+    }
+
+    @Override
+    public void handle(S2CUpdateBlockEntityData message, MessageContext context)
+    {
+        context.execute(() -> ClientPlayHandler.handleUpdateBlockEntityData(message));
+        context.setHandled(true);
+    }
+
+    public List<Entry> getEntries()
+    {
+        return this.entries;
+    }
+
+    public record Entry(BlockPos pos, SyncedBlockEntityKey<?, ?> key, Object value) {}
+
+    /**
+     * Encodes the values of block entities into a message. Values are encoded when added, so later
+     * changes to mutable values don't affect the message.
+     */
+    public static class Builder
+    {
+        private final Reference2IntMap<SyncedBlockEntityKey<?, ?>> palette = new Reference2IntLinkedOpenHashMap<>();
+        private final FriendlyByteBuf body = new FriendlyByteBuf(Unpooled.buffer());
+        private int blockEntities;
+
+        /**
+         * Starts a block entity in this message
+         *
+         * @param pos   the position of the block entity
+         * @param count the amount of values that will be written for the block entity
+         */
+        public void startBlockEntity(BlockPos pos, int count)
+        {
+            this.body.writeLong(pos.asLong());
+            this.body.writeVarInt(count);
+            this.blockEntities++;
+        }
+
+        /**
+         * Starts a value of the current block entity. The value must be written to the returned
+         * buffer using the serializer of the key.
+         *
+         * @param key the synced block entity key of the value
+         * @return the buffer to write the value to
+         */
+        public FriendlyByteBuf startValue(SyncedBlockEntityKey<?, ?> key)
+        {
+            int index = this.palette.computeIfAbsent(key, k -> this.palette.size());
+            this.body.writeVarInt(index);
+            return this.body;
+        }
+
+        public boolean isEmpty()
+        {
+            return this.blockEntities == 0;
+        }
+
+        public boolean isFull()
+        {
+            return this.body.readableBytes() >= MAX_SIZE;
+        }
+
+        public S2CUpdateBlockEntityData build()
+        {
+            FriendlyByteBuf data = new FriendlyByteBuf(Unpooled.buffer(this.body.readableBytes() + this.palette.size() * 8 + 8));
+            data.writeVarInt(this.palette.size());
+            this.palette.keySet().forEach(key -> data.writeLong(SyncedBlockEntityData.getKeyHash(key)));
+            data.writeVarInt(this.blockEntities);
+            data.writeBytes(this.body);
+            return new S2CUpdateBlockEntityData(data);
+        }
+    }
+}
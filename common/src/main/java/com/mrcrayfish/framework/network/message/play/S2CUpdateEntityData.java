@@ -6,7 +6,6 @@ import com.mrcrayfish.framework.client.multiplayer.ClientPlayHandler;
 import com.mrcrayfish.framework.entity.sync.DataEntry;
 import net.minecraft.network.FriendlyByteBuf;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -28,22 +27,39 @@ public class S2CUpdateEntityData extends PlayMessage<S2CUpdateEntityData>
     @Override
     public void encode(S2CUpdateEntityData message, FriendlyByteBuf buffer)
     {
-        buffer.writeVarInt(message.entityId);
-        buffer.writeVarInt(message.entries.size());
-        message.entries.forEach(entry -> entry.write(buffer));
+        writeUpdate(buffer, message.entityId, message.entries);
     }
 
     @Override
     public S2CUpdateEntityData decode(FriendlyByteBuf buffer)
+    {
+        return readUpdate(buffer);
+    }
+
+    /**
+     * Writes the entries of an entity into the given buffer. This is shared with batched updates,
+     * which allows an update to be encoded once and then copied into multiple batches.
+     */
+    public static void writeUpdate(FriendlyByteBuf buffer, int entityId, List<DataEntry<?, ?>> entries)
+    {
+        writeUpdate(buffer, entityId, entries, false);
+    }
+
+    /**
+     * Writes the entries of an entity into the given buffer. If delta is true, entries of keys using
+     * a delta serializer will only write the changes since the value last sent to clients. Boolean
+     * entries are packed into a bitfield, see {@link DataEntry#writeEntries}.
+     */
+    public static void writeUpdate(FriendlyByteBuf buffer, int entityId, List<DataEntry<?, ?>> entries, boolean delta)
+    {
+        buffer.writeVarInt(entityId);
+        DataEntry.writeEntries(buffer, entries, delta);
+    }
+
+    public static S2CUpdateEntityData readUpdate(FriendlyByteBuf buffer)
     {
         int entityId = buffer.readVarInt();
-        int size = buffer.readVarInt();
-        List<DataEntry<?, ?>> entries = new ArrayList<>();
-        for(int i = 0; i < size; i++)
-        {
-            entries.add(DataEntry.read(buffer));
-        }
-        return new S2CUpdateEntityData(entityId, entries);
+        return new S2CUpdateEntityData(entityId, DataEntry.readEntries(buffer));
     }
 
     @Override
@@ -0,0 +1,116 @@
+package com.mrcrayfish.framework.network.message.play;
+
+import com.mrcrayfish.framework.api.network.MessageContext;
+import com.mrcrayfish.framework.api.network.message.PlayMessage;
+import com.mrcrayfish.framework.api.sync.SyncedLevelDataKey;
+import com.mrcrayfish.framework.client.multiplayer.ClientPlayHandler;
+import com.mrcrayfish.framework.level.sync.SyncedLevelData;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.FriendlyByteBuf;
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the synced level data of the server and of the level of the receiving player. Both sections
+ * are encoded once on the server and shared by the message of every player, so only the flags are
+ * written per player.
+ * <p>
+ * Author: MrCrayfish
+ */
+public class S2CUpdateLevelData extends PlayMessage<S2CUpdateLevelData>
+{
+    /**
+     * Resets the server wide values held by the client before applying the entries
+     */
+    public static final int RESET_SERVER = 1;
+
+    /**
+     * Resets the level values held by the client before applying the entries
+     */
+    public static final int RESET_LEVEL = 2;
+
+    /**
+     * A section without any entries
+     */
+    public static final ByteBuf EMPTY_SECTION = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(new byte[]{0}));
+
+    private int flags;
+    private ByteBuf serverData;
+    private ByteBuf levelData;
+    private List<Entry> serverEntries;
+    private List<Entry> levelEntries;
+
+    public S2CUpdateLevelData() {}
+
+    public S2CUpdateLevelData(int flags, ByteBuf serverData, ByteBuf levelData)
+    {
+        this.flags = flags;
+        this.serverData = serverData;
+        this.levelData = levelData;
+    }
+
+    private S2CUpdateLevelData(int flags, List<Entry> serverEntries, List<Entry> levelEntries)
+    {
+        this.flags = flags;
+        this.serverEntries = serverEntries;
+        this.levelEntries = levelEntries;
+    }
+
+    @Override
+    public void encode(S2CUpdateLevelData message, FriendlyByteBuf buffer)
+    {
+        buffer.writeByte(message.flags);
+        buffer.writeBytes(message.serverData, message.serverData.readerIndex(), message.serverData.readableBytes());
+        buffer.writeBytes(message.levelData, message.levelData.readerIndex(), message.levelData.readableBytes());
+    }
+
+    @Override
+    public S2CUpdateLevelData decode(FriendlyByteBuf buffer)
+    {
+        int flags = buffer.readByte();
+        List<Entry> serverEntries = readSection(buffer);
+        List<Entry> levelEntries = readSection(buffer);
+        return new S2CUpdateLevelData(flags, serverEntries, levelEntries);
+    }
+
+    private static List<Entry> readSection(FriendlyByteBuf buffer)
+    {
+        int size = buffer.readVarInt();
+        List<Entry> entries = new ArrayList<>(size);
+        for(int i = 0; i < size; i++)
+        {
+            long hash = buffer.readLong();
+            SyncedLevelDataKey<?> key = SyncedLevelData.instance().getKeyByHash(hash);
+            Validate.notNull(key, "Synced level data key does not exist for hash %016x", hash);
+            entries.add(new Entry(key, key.serializer().read(buffer)));
+        }
+        return entries;
+    }
+
+    @Override
+    public void handle(S2CUpdateLevelData message, MessageContext context)
+    {
+        context.execute(() -> ClientPlayHandler.handleUpdateLevelData(message));
+        context.setHandled(true);
+    }
+
+    public int getFlags()
+    {
+        return this.flags;
+    }
+
+    public List<Entry> getServerEntries()
+    {
+        return this.serverEntries;
+    }
+
+    public List<Entry> getLevelEntries()
+    {
+        return this.levelEntries;
+    }
+
+    public record Entry(SyncedLevelDataKey<?> key, Object value) {}
+}
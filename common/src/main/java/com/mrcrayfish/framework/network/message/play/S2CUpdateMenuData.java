@@ -0,0 +1,89 @@
+package com.mrcrayfish.framework.network.message.play;
+
+import com.mrcrayfish.framework.api.network.MessageContext;
+import com.mrcrayfish.framework.api.network.message.PlayMessage;
+import com.mrcrayfish.framework.api.sync.IDeltaDataSerializer;
+import com.mrcrayfish.framework.api.sync.SyncedMenuDataKey;
+import com.mrcrayfish.framework.client.multiplayer.ClientPlayHandler;
+import com.mrcrayfish.framework.menu.sync.SyncedMenuData;
+import io.netty.buffer.ByteBuf;
+import net.minecraft.network.FriendlyByteBuf;
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the changed synced menu data of the menu open by the receiving player. Values of keys using
+ * a delta serializer may be received as a delta, which is applied on the main thread.
+ * <p>
+ * Author: MrCrayfish
+ */
+public class S2CUpdateMenuData extends PlayMessage<S2CUpdateMenuData>
+{
+    private ByteBuf data;
+    private int containerId;
+    private List<Entry> entries;
+
+    public S2CUpdateMenuData() {}
+
+    public S2CUpdateMenuData(ByteBuf data)
+    {
+        this.data = data;
+    }
+
+    private S2CUpdateMenuData(int containerId, List<Entry> entries)
+    {
+        this.containerId = containerId;
+        this.entries = entries;
+    }
+
+    @Override
+    public void encode(S2CUpdateMenuData message, FriendlyByteBuf buffer)
+    {
+        buffer.writeBytes(message.data, message.data.readerIndex(), message.data.readableBytes());
+    }
+
+    @Override
+    public S2CUpdateMenuData decode(FriendlyByteBuf buffer)
+    {
+        int containerId = buffer.readVarInt();
+        int size = buffer.readVarInt();
+        List<Entry> entries = new ArrayList<>(size);
+        for(int i = 0; i < size; i++)
+        {
+            long hash = buffer.readLong();
+            SyncedMenuDataKey<?> key = SyncedMenuData.instance().getKeyByHash(hash);
+            Validate.notNull(key, "Synced menu data key does not exist for hash %016x", hash);
+            if(key.serializer() instanceof IDeltaDataSerializer<?> && buffer.readBoolean())
+            {
+                entries.add(new Entry(key, null, buffer.readByteArray()));
+            }
+            else
+            {
+                entries.add(new Entry(key, key.serializer().read(buffer), null));
+            }
+        }
+        return new S2CUpdateMenuData(containerId, entries);
+    }
+
+    @Override
+    public void handle(S2CUpdateMenuData message, MessageContext context)
+    {
+        context.execute(() -> ClientPlayHandler.handleUpdateMenuData(message));
+        context.setHandled(true);
+    }
+
+    public int getContainerId()
+    {
+        return this.containerId;
+    }
+
+    public List<Entry> getEntries()
+    {
+        return this.entries;
+    }
+
+    public record Entry(SyncedMenuDataKey<?> key, @Nullable Object value, @Nullable byte[] delta) {}
+}
@@ -12,4 +12,13 @@ public interface IEntityHelper
 {
     @Nullable
     DataHolder getDataHolder(Entity entity, boolean old);
+
+    /**
+     * Gets the data holder of the entity without creating it if the platform creates holders lazily.
+     *
+     * @param entity the entity to get the holder from
+     * @return the data holder or null if the entity doesn't have one yet
+     */
+    @Nullable
+    DataHolder getDataHolderIfPresent(Entity entity);
 }
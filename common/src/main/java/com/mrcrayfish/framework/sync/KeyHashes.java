@@ -0,0 +1,27 @@
+package com.mrcrayfish.framework.sync;
+
+import com.google.common.hash.Hashing;
+import net.minecraft.resources.ResourceLocation;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Creates the 64-bit hashes used to identify synced keys over the network. The scope separates
+ * keys of different kinds of synced data that share the same id.
+ * <p>
+ * Author: MrCrayfish
+ */
+public final class KeyHashes
+{
+    private KeyHashes() {}
+
+    /**
+     * @param scope the scope of the key, for example "level"
+     * @param id    the id of the key
+     * @return a hash of the scope and the id of the key
+     */
+    public static long hash(String scope, ResourceLocation id)
+    {
+        return Hashing.murmur3_128().hashString(scope + "/" + id, StandardCharsets.UTF_8).asLong();
+    }
+}
@@ -0,0 +1,117 @@
+package com.mrcrayfish.framework.sync;
+
+import com.mrcrayfish.framework.api.sync.IDataSerializer;
+
+import javax.annotation.Nullable;
+import java.util.BitSet;
+
+/**
+ * Stores the values of a fixed set of synced keys in dense slots, along with the content hash of
+ * each value and the slots that changed since they were last sent. Used by the synced data holders
+ * of block entities and levels, while the change detection is also shared with entity and menu data.
+ * <p>
+ * Author: MrCrayfish
+ */
+public final class ValueSlots
+{
+    private final IDataSerializer<?>[] serializers;
+    private final Object[] values;
+    private final int[] hashes;
+    private final BitSet dirtySlots = new BitSet();
+
+    /**
+     * @param serializers the serializer of the key in each slot
+     */
+    public ValueSlots(IDataSerializer<?>[] serializers)
+    {
+        this.serializers = serializers;
+        this.values = new Object[serializers.length];
+        this.hashes = new int[serializers.length];
+    }
+
+    public int size()
+    {
+        return this.values.length;
+    }
+
+    public Object get(int slot)
+    {
+        return this.values[slot];
+    }
+
+    /**
+     * Updates the value in a slot
+     *
+     * @return true if the content of the value changed
+     */
+    public boolean set(int slot, Object value)
+    {
+        IDataSerializer<Object> serializer = this.getSerializer(slot);
+        int hash = serializer.contentHash(value);
+        boolean changed = hasChanged(serializer, this.values[slot], this.hashes[slot], value, hash);
+        this.values[slot] = value;
+        this.hashes[slot] = hash;
+        return changed;
+    }
+
+    /**
+     * Replaces the value in a slot without comparing it, for example with a loaded or received value
+     */
+    public void put(int slot, Object value)
+    {
+        this.values[slot] = value;
+        this.hashes[slot] = this.getSerializer(slot).contentHash(value);
+    }
+
+    /**
+     * Updates the content hash of the value in a slot, after it was changed in place
+     */
+    public void refreshHash(int slot)
+    {
+        this.hashes[slot] = this.getSerializer(slot).contentHash(this.values[slot]);
+    }
+
+    public void markDirty(int slot)
+    {
+        this.dirtySlots.set(slot);
+    }
+
+    public boolean hasDirtySlots()
+    {
+        return !this.dirtySlots.isEmpty();
+    }
+
+    /**
+     * @return the slots that changed since they were last sent. Clear it once they are sent.
+     */
+    public BitSet getDirtySlots()
+    {
+        return this.dirtySlots;
+    }
+
+    @SuppressWarnings("unchecked")
+    public IDataSerializer<Object> getSerializer(int slot)
+    {
+        return (IDataSerializer<Object>) this.serializers[slot];
+    }
+
+    /**
+     * Tests if a value changed compared to a previous value. Since the content hash is consistent
+     * with {@link IDataSerializer#contentEquals(Object, Object)}, different hashes always mean a
+     * change. The previous value may be the same instance changed in place, in which case only its
+     * hash from before can tell if it changed.
+     *
+     * @param serializer   the serializer of the key
+     * @param previous     the previous value
+     * @param previousHash the content hash of the previous value when it was stored
+     * @param value        the new value
+     * @param valueHash    the content hash of the new value
+     * @return true if the content of the value changed
+     */
+    public static <T> boolean hasChanged(IDataSerializer<T> serializer, @Nullable T previous, int previousHash, T value, int valueHash)
+    {
+        if(previousHash != valueHash)
+            return true;
+        return previous != value && !serializer.contentEquals(previous, value);
+    }
+}
@@ -1,9 +1,14 @@
 package com.mrcrayfish.framework.entity.sync;
 
+import javax.annotation.Nullable;
+
 /**
  * Author: MrCrayfish
  */
 public interface ISyncedDataHolder
 {
     DataHolder frameworkGetDataHolder();
+
+    @Nullable
+    DataHolder frameworkGetDataHolderIfPresent();
 }
@@ -2,42 +2,76 @@ package com.mrcrayfish.framework.entity.sync;
 
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.Tag;
+import net.minecraft.world.entity.Entity;
+
+import javax.annotation.Nullable;
 
 /**
  * Author: MrCrayfish
  */
 public class LazyDataHolder
 {
+    private final Class<? extends Entity> entityClass;
+    @Nullable
     private final CompoundTag data;
-    private DataHolder holder;
+    private volatile DataHolder holder; // Volatile since values can be read from worker threads
 
-    public LazyDataHolder(CompoundTag data)
+    public LazyDataHolder(Class<? extends Entity> entityClass, @Nullable CompoundTag data)
     {
+        this.entityClass = entityClass;
         this.data = data;
     }
 
     public DataHolder get()
     {
-        if(this.holder == null)
+        DataHolder holder = this.holder;
+        if(holder == null)
+        {
+            synchronized(this)
+            {
+                holder = this.holder;
+                if(holder == null)
+                {
+                    holder = this.create();
+                    this.holder = holder;
+                }
+            }
+        }
+        return holder;
+    }
+
+    /**
+     * Gets the holder without creating it, unless there is saved data that needs to be read
+     */
+    @Nullable
+    public DataHolder getIfPresent()
+    {
+        DataHolder holder = this.holder;
+        if(holder == null && this.data != null && !this.data.isEmpty())
         {
-            this.holder = this.create();
+            holder = this.get();
         }
-        return this.holder;
+        return holder;
     }
 
     private DataHolder create()
     {
-        DataHolder newHolder = new DataHolder();
-        newHolder.deserialize(this.data.getList("Keys", Tag.TAG_COMPOUND));
+        DataHolder newHolder = new DataHolder(this.entityClass);
+        if(this.data != null)
+        {
+            newHolder.deserialize(this.data.getList("Keys", Tag.TAG_COMPOUND));
+        }
         return newHolder;
     }
 
+    @Nullable
     public CompoundTag serialize()
     {
-        if(this.holder != null)
+        DataHolder holder = this.holder;
+        if(holder != null)
         {
             CompoundTag tag = new CompoundTag();
-            tag.put("Keys", this.holder.serialize());
+            tag.put("Keys", holder.serialize());
             return tag;
         }
         return this.data;
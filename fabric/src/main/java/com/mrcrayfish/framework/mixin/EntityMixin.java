@@ -4,6 +4,7 @@ import com.mrcrayfish.framework.entity.sync.DataHolder;
 import com.mrcrayfish.framework.entity.sync.ISyncedDataHolder;
 import com.mrcrayfish.framework.entity.sync.LazyDataHolder;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.world.entity.Entity;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Unique;
@@ -22,7 +23,7 @@ public class EntityMixin implements ISyncedDataHolder
 {
     @Unique
     @Nullable
-    private LazyDataHolder frameworkLazyDataHolder;
+    private volatile LazyDataHolder frameworkLazyDataHolder;
 
     @Nullable
     @Override
@@ -30,23 +31,33 @@ public class EntityMixin implements ISyncedDataHolder
     {
         if(this.frameworkLazyDataHolder == null)
         {
-            this.frameworkLazyDataHolder = new LazyDataHolder(new CompoundTag());
+            this.frameworkLazyDataHolder = new LazyDataHolder(((Entity) (Object) this).getClass(), null);
         }
         return this.frameworkLazyDataHolder.get();
     }
 
+    @Nullable
+    @Override
+    public DataHolder frameworkGetDataHolderIfPresent()
+    {
+        LazyDataHolder lazyHolder = this.frameworkLazyDataHolder;
+        return lazyHolder != null ? lazyHolder.getIfPresent() : null;
+    }
+
     @Inject(method = "load", at = @At(value = "INVOKE", target = "Lnet/minecraft/world/entity/Entity;readAdditionalSaveData(Lnet/minecraft/nbt/CompoundTag;)V"))
     private void frameworkOnLoadData(CompoundTag tag, CallbackInfo ci)
     {
-        this.frameworkLazyDataHolder = new LazyDataHolder(tag.getCompound("FrameworkDataHolder"));
+        // Entities without saved data don't get a holder until a value is written
+        this.frameworkLazyDataHolder = tag.contains("FrameworkDataHolder", Tag.TAG_COMPOUND) ? new LazyDataHolder(((Entity) (Object) this).getClass(), tag.getCompound("FrameworkDataHolder")) : null;
     }
 
     @Inject(method = "saveWithoutId", at = @At(value = "INVOKE", target = "Lnet/minecraft/world/entity/Entity;addAdditionalSaveData(Lnet/minecraft/nbt/CompoundTag;)V"))
     private void frameworkOnSaveData(CompoundTag tag, CallbackInfoReturnable<CompoundTag> cir)
     {
-        if(this.frameworkLazyDataHolder != null)
+        CompoundTag data = this.frameworkLazyDataHolder != null ? this.frameworkLazyDataHolder.serialize() : null;
+        if(data != null)
         {
-            tag.put("FrameworkDataHolder", this.frameworkLazyDataHolder.serialize());
+            tag.put("FrameworkDataHolder", data);
         }
     }
 }
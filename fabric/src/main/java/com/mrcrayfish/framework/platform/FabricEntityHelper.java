@@ -18,4 +18,11 @@ public class FabricEntityHelper implements IEntityHelper
     {
         return ((ISyncedDataHolder) entity).frameworkGetDataHolder();
     }
+
+    @Override
+    @Nullable
+    public DataHolder getDataHolderIfPresent(Entity entity)
+    {
+        return ((ISyncedDataHolder) entity).frameworkGetDataHolderIfPresent();
+    }
 }
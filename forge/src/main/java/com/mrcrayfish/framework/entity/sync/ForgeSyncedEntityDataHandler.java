@@ -26,10 +26,12 @@ import javax.annotation.Nullable;
 public class ForgeSyncedEntityDataHandler
 {
     public static final Capability<DataHolder> CAPABILITY = CapabilityManager.get(new CapabilityToken<>(){});
+    public static final Capability<Provider> PROVIDER = CapabilityManager.get(new CapabilityToken<>(){});
 
     public static void registerCapabilities(RegisterCapabilitiesEvent event)
     {
         event.register(DataHolder.class);
+        event.register(Provider.class);
     }
 
     @SubscribeEvent
@@ -37,7 +39,7 @@ public class ForgeSyncedEntityDataHandler
     {
         if(SyncedEntityData.instance().hasSyncedDataKey(event.getObject()))
         {
-            Provider provider = new Provider();
+            Provider provider = new Provider(event.getObject());
             event.addCapability(new ResourceLocation(Constants.MOD_ID, "synced_entity_data"), provider);
             if(!(event.getObject() instanceof ServerPlayer)) // Don't add invalidate to server player since it's persistent
             {
@@ -46,32 +48,87 @@ public class ForgeSyncedEntityDataHandler
         }
     }
 
+    /**
+     * Provides the data holder of an entity. The holder is only created on the first write, or on
+     * the first read if the entity has saved data. Until then, saved data is kept as is and written
+     * back unchanged when the entity is saved. The provider itself is exposed through
+     * {@link #PROVIDER} so reads can check for a holder without creating one.
+     */
     public static class Provider implements ICapabilitySerializable<ListTag>
     {
-        final DataHolder holder = new DataHolder();
-        final LazyOptional<DataHolder> optional = LazyOptional.of(() -> this.holder);
+        final Class<? extends Entity> entityClass;
+        final LazyOptional<DataHolder> optional;
+        final LazyOptional<Provider> self;
+        @Nullable
+        DataHolder holder;
+        @Nullable
+        ListTag data;
+
+        public Provider(Entity entity)
+        {
+            this.entityClass = entity.getClass();
+            this.optional = LazyOptional.of(this::getHolder);
+            this.self = LazyOptional.of(() -> this);
+        }
+
+        private DataHolder getHolder()
+        {
+            if(this.holder == null)
+            {
+                this.holder = new DataHolder(this.entityClass);
+                if(this.data != null)
+                {
+                    this.holder.deserialize(this.data);
+                    this.data = null;
+                }
+            }
+            return this.holder;
+        }
+
+        /**
+         * @return the holder if it has been created or there is saved data to decode, otherwise null
+         */
+        @Nullable
+        public DataHolder getHolderIfPresent()
+        {
+            return this.holder != null || this.data != null ? this.getHolder() : null;
+        }
 
         public void invalidate()
         {
             this.optional.invalidate();
+            this.self.invalidate();
         }
 
         @Override
         public ListTag serializeNBT()
         {
-            return this.holder.serialize();
+            if(this.holder != null)
+            {
+                return this.holder.serialize();
+            }
+            return this.data != null ? this.data : new ListTag();
         }
 
         @Override
         public void deserializeNBT(ListTag listTag)
         {
-            this.holder.deserialize(listTag);
+            if(this.holder != null)
+            {
+                this.holder.deserialize(listTag);
+                return;
+            }
+            this.data = listTag;
         }
 
         @Nonnull
         @Override
         public <T> LazyOptional<T> getCapability(@Nonnull Capability<T> cap, @Nullable Direction side)
         {
+            if(cap == PROVIDER)
+            {
+                return this.self.cast();
+            }
             return CAPABILITY.orEmpty(cap, this.optional);
         }
     }
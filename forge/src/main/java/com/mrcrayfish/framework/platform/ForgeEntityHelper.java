@@ -21,4 +21,12 @@ public class ForgeEntityHelper implements IEntityHelper
         if(old) entity.invalidateCaps();
         return holder;
     }
+
+    @Override
+    @Nullable
+    public DataHolder getDataHolderIfPresent(Entity entity)
+    {
+        ForgeSyncedEntityDataHandler.Provider provider = entity.getCapability(ForgeSyncedEntityDataHandler.PROVIDER, null).resolve().orElse(null);
+        return provider != null ? provider.getHolderIfPresent() : null;
+    }
 }
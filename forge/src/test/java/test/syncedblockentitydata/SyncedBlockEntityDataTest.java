@@ -0,0 +1,148 @@
+package test.syncedblockentitydata;
+
+import com.mrcrayfish.framework.api.FrameworkAPI;
+import com.mrcrayfish.framework.api.registry.RegistryContainer;
+import com.mrcrayfish.framework.api.registry.RegistryEntry;
+import com.mrcrayfish.framework.api.sync.ISyncedBlockEntity;
+import com.mrcrayfish.framework.api.sync.Serializers;
+import com.mrcrayfish.framework.api.sync.SyncedBlockEntityKey;
+import com.mrcrayfish.framework.api.sync.SyncedDataKey;
+import com.mrcrayfish.framework.blockentity.sync.BlockEntityDataHolder;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.game.ClientGamePacketListener;
+import net.minecraft.network.protocol.game.ClientboundBlockEntityDataPacket;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.InteractionHand;
+import net.minecraft.world.InteractionResult;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.EntityBlock;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.entity.BlockEntityType;
+import net.minecraft.world.level.block.state.BlockBehaviour;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.phys.BlockHitResult;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
+import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
+
+/**
+ * Using the counter block increments a synced block entity key on the server. The value is saved
+ * with the block entity, and the client prints the value it received when the block is used.
+ * <p>
+ * Author: MrCrayfish
+ */
+@Mod("synced_block_entity_data_test")
+@RegistryContainer
+public class SyncedBlockEntityDataTest
+{
+    public static final RegistryEntry<Block> COUNTER_BLOCK = RegistryEntry.blockWithItem(new ResourceLocation("synced_block_entity_data_test", "counter"), () -> new CounterBlock(BlockBehaviour.Properties.copy(Blocks.OAK_PLANKS)));
+    public static final RegistryEntry<BlockEntityType<CounterBlockEntity>> COUNTER_BLOCK_ENTITY = RegistryEntry.blockEntity(new ResourceLocation("synced_block_entity_data_test", "counter"), CounterBlockEntity::new, () -> new Block[]{COUNTER_BLOCK.get()});
+
+    private static final SyncedBlockEntityKey<CounterBlockEntity, Integer> CLICKS = SyncedBlockEntityKey.builder(CounterBlockEntity.class, Serializers.INTEGER)
+            .id(new ResourceLocation("synced_block_entity_data_test", "clicks"))
+            .defaultValueSupplier(() -> 0)
+            .saveToFile()
+            .syncMode(SyncedDataKey.SyncMode.ALL)
+            .build();
+
+    public SyncedBlockEntityDataTest()
+    {
+        FMLJavaModLoadingContext.get().getModEventBus().addListener(this::onCommonSetup);
+    }
+
+    private void onCommonSetup(FMLCommonSetupEvent event)
+    {
+        event.enqueueWork(() -> {
+            FrameworkAPI.registerSyncedBlockEntityKey(CLICKS);
+        });
+    }
+
+    public static class CounterBlock extends Block implements EntityBlock
+    {
+        public CounterBlock(Properties properties)
+        {
+            super(properties);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public InteractionResult use(BlockState state, Level level, BlockPos pos, Player player, InteractionHand hand, BlockHitResult result)
+        {
+            if(level.getBlockEntity(pos) instanceof CounterBlockEntity counter)
+            {
+                if(level.isClientSide())
+                {
+                    // The client only knows the value it received from the server
+                    player.displayClientMessage(Component.literal("The client has received " + CLICKS.getValue(counter) + " clicks"), false);
+                }
+                else
+                {
+                    int newCount = CLICKS.getValue(counter) + 1;
+                    CLICKS.setValue(counter, newCount);
+                    if(CLICKS.getValue(counter) != newCount)
+                    {
+                        throw new IllegalStateException("The counter returned a different click count");
+                    }
+                }
+                return InteractionResult.sidedSuccess(level.isClientSide());
+            }
+            return InteractionResult.PASS;
+        }
+
+        @Override
+        public BlockEntity newBlockEntity(BlockPos pos, BlockState state)
+        {
+            return new CounterBlockEntity(pos, state);
+        }
+    }
+
+    public static class CounterBlockEntity extends BlockEntity implements ISyncedBlockEntity
+    {
+        private final BlockEntityDataHolder holder = new BlockEntityDataHolder(this);
+
+        public CounterBlockEntity(BlockPos pos, BlockState state)
+        {
+            super(COUNTER_BLOCK_ENTITY.get(), pos, state);
+        }
+
+        @Override
+        public BlockEntityDataHolder getSyncedDataHolder()
+        {
+            return this.holder;
+        }
+
+        @Override
+        protected void saveAdditional(CompoundTag tag)
+        {
+            super.saveAdditional(tag);
+            this.holder.save(tag);
+        }
+
+        @Override
+        public void load(CompoundTag tag)
+        {
+            super.load(tag);
+            this.holder.load(tag);
+        }
+
+        @Override
+        public CompoundTag getUpdateTag()
+        {
+            CompoundTag tag = super.getUpdateTag();
+            this.holder.writeUpdateTag(tag);
+            return tag;
+        }
+
+        @Override
+        public Packet<ClientGamePacketListener> getUpdatePacket()
+        {
+            return ClientboundBlockEntityDataPacket.create(this);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package test.syncedleveldata;
+
+import com.mrcrayfish.framework.api.FrameworkAPI;
+import com.mrcrayfish.framework.api.sync.Serializers;
+import com.mrcrayfish.framework.api.sync.SyncedLevelDataKey;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.InteractionHand;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.RegisterCommandsEvent;
+import net.minecraftforge.event.entity.player.PlayerInteractEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
+import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
+
+/**
+ * The count command increments a synced key of the level the player is in and a server wide key.
+ * Both are saved with the world, and the client prints the values it received when the player
+ * right clicks with an empty hand.
+ * <p>
+ * Author: MrCrayfish
+ */
+@Mod("synced_level_data_test")
+public class SyncedLevelDataTest
+{
+    private static final SyncedLevelDataKey<Integer> LEVEL_COUNT = SyncedLevelDataKey.builder(Serializers.INTEGER)
+            .id(new ResourceLocation("synced_level_data_test", "level_count"))
+            .defaultValueSupplier(() -> 0)
+            .saveToFile()
+            .build();
+
+    private static final SyncedLevelDataKey<Integer> SERVER_COUNT = SyncedLevelDataKey.builder(Serializers.INTEGER)
+            .id(new ResourceLocation("synced_level_data_test", "server_count"))
+            .defaultValueSupplier(() -> 0)
+            .saveToFile()
+            .serverWide()
+            .build();
+
+    public SyncedLevelDataTest()
+    {
+        MinecraftForge.EVENT_BUS.addListener(this::onRegisterCommands);
+        MinecraftForge.EVENT_BUS.addListener(this::onRightClickEmpty);
+        FMLJavaModLoadingContext.get().getModEventBus().addListener(this::onCommonSetup);
+    }
+
+    private void onCommonSetup(FMLCommonSetupEvent event)
+    {
+        event.enqueueWork(() -> {
+            FrameworkAPI.registerSyncedLevelDataKey(LEVEL_COUNT);
+            FrameworkAPI.registerSyncedLevelDataKey(SERVER_COUNT);
+        });
+    }
+
+    private void onRegisterCommands(RegisterCommandsEvent event)
+    {
+        event.getDispatcher().register(Commands.literal("synced_level_data_test:count").executes(context -> {
+            ServerLevel level = context.getSource().getLevel();
+            int levelCount = LEVEL_COUNT.getValue(level) + 1;
+            int serverCount = SERVER_COUNT.getValue(level) + 1;
+            LEVEL_COUNT.setValue(level, levelCount);
+            SERVER_COUNT.setValue(level, serverCount);
+
+            // Server wide keys must hold the same value in every level
+            if(SERVER_COUNT.getValue(context.getSource().getServer().overworld()) != serverCount)
+            {
+                throw new IllegalStateException("The server wide key returned a different count in the overworld");
+            }
+            context.getSource().sendSuccess(() -> Component.literal("Level count is " + levelCount + ", server count is " + serverCount), false);
+            return 1;
+        }));
+    }
+
+    // Only fired on the client
+    private void onRightClickEmpty(PlayerInteractEvent.RightClickEmpty event)
+    {
+        if(event.getHand() != InteractionHand.MAIN_HAND)
+            return;
+
+        Player player = event.getEntity();
+        Level level = player.level();
+        player.displayClientMessage(Component.literal("The client has received level count " + LEVEL_COUNT.getValue(level) + " and server count " + SERVER_COUNT.getValue(level)), false);
+    }
+}
@@ -0,0 +1,136 @@
+package test.syncedmenudata;
+
+import com.mrcrayfish.framework.api.FrameworkAPI;
+import com.mrcrayfish.framework.api.registry.RegistryContainer;
+import com.mrcrayfish.framework.api.registry.RegistryEntry;
+import com.mrcrayfish.framework.api.sync.ISyncedMenu;
+import com.mrcrayfish.framework.api.sync.Serializers;
+import com.mrcrayfish.framework.api.sync.SyncedMenuDataKey;
+import com.mrcrayfish.framework.menu.sync.MenuDataHolder;
+import net.minecraft.client.gui.GuiGraphics;
+import net.minecraft.client.gui.screens.MenuScreens;
+import net.minecraft.client.gui.screens.inventory.AbstractContainerScreen;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.SimpleMenuProvider;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.inventory.MenuType;
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.RegisterCommandsEvent;
+import net.minecraftforge.eventbus.api.IEventBus;
+import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.event.lifecycle.FMLClientSetupEvent;
+import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
+import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
+
+/**
+ * The open command opens a menu that counts the ticks it has been open on the server. The menu
+ * tracks the count on both sides, but the screen must show the count received from the server,
+ * since the count of the client copy of the menu never changes.
+ * <p>
+ * Author: MrCrayfish
+ */
+@Mod("synced_menu_data_test")
+@RegistryContainer
+public class SyncedMenuDataTest
+{
+    public static final RegistryEntry<MenuType<TestMenu>> TEST_MENU = RegistryEntry.menuType(new ResourceLocation("synced_menu_data_test", "test_menu"), TestMenu::new);
+
+    private static final SyncedMenuDataKey<Integer> TICKS_OPEN = SyncedMenuDataKey.builder(Serializers.INTEGER)
+            .id(new ResourceLocation("synced_menu_data_test", "ticks_open"))
+            .defaultValueSupplier(() -> 0)
+            .build();
+
+    public SyncedMenuDataTest()
+    {
+        IEventBus bus = FMLJavaModLoadingContext.get().getModEventBus();
+        bus.addListener(this::onCommonSetup);
+        DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> {
+            bus.addListener(this::onClientSetup);
+        });
+        MinecraftForge.EVENT_BUS.addListener(this::onRegisterCommands);
+    }
+
+    private void onCommonSetup(FMLCommonSetupEvent event)
+    {
+        event.enqueueWork(() -> {
+            FrameworkAPI.registerSyncedMenuDataKey(TICKS_OPEN);
+        });
+    }
+
+    private void onClientSetup(FMLClientSetupEvent event)
+    {
+        event.enqueueWork(() -> MenuScreens.register(TEST_MENU.get(), TestScreen::new));
+    }
+
+    private void onRegisterCommands(RegisterCommandsEvent event)
+    {
+        event.getDispatcher().register(Commands.literal("synced_menu_data_test:open").executes(context -> {
+            if(context.getSource().source instanceof ServerPlayer player) {
+                player.openMenu(new SimpleMenuProvider((windowId, playerInventory, player1) -> {
+                    return new TestMenu(windowId, playerInventory);
+                }, Component.literal("Synced Menu Data")));
+            }
+            return 1;
+        }));
+    }
+
+    public static class TestScreen extends AbstractContainerScreen<TestMenu>
+    {
+        public TestScreen(TestMenu menu, Inventory playerInventory, Component title)
+        {
+            super(menu, playerInventory, title);
+        }
+
+        @Override
+        protected void renderBg(GuiGraphics graphics, float partialTick, int mouseX, int mouseY)
+        {
+            this.renderBackground(graphics);
+            graphics.drawString(this.font, "Ticks open: " + TICKS_OPEN.getValue(this.menu), 0, 0, 0xFFFFFF);
+        }
+    }
+
+    public static class TestMenu extends AbstractContainerMenu implements ISyncedMenu
+    {
+        private final MenuDataHolder holder = new MenuDataHolder(this);
+        private int ticksOpen;
+
+        private TestMenu(int windowId, Inventory playerInventory)
+        {
+            super(TEST_MENU.get(), windowId);
+            this.holder.track(TICKS_OPEN, () -> this.ticksOpen);
+        }
+
+        @Override
+        public MenuDataHolder getSyncedDataHolder()
+        {
+            return this.holder;
+        }
+
+        @Override
+        public void broadcastChanges()
+        {
+            super.broadcastChanges();
+            this.ticksOpen++;
+        }
+
+        @Override
+        public ItemStack quickMoveStack(Player player, int slotIndex)
+        {
+            return ItemStack.EMPTY;
+        }
+
+        @Override
+        public boolean stillValid(Player player)
+        {
+            return true;
+        }
+    }
+}
@@ -89,6 +89,13 @@ public class SyncedEntityDataTest
             int newCount = HIT_COUNT.getValue(animal) + 1;
             HIT_COUNT.setValue(animal, newCount);
             event.getEntity().displayClientMessage(Component.literal("This animal has been hit " + newCount + " times!"), true);
+
+            // The primitive accessors must see the same value without boxing
+            if(HIT_COUNT.getInt(animal) != newCount)
+            {
+                throw new IllegalStateException("Primitive accessor returned a different hit count");
+            }
+            HIT_COUNT.setInt(animal, newCount);
         }
     }
 }